@@ -0,0 +1,32 @@
+package Model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * A scratch directory for a benchmark's database, removed when the benchmark is done
+ */
+class BenchmarkFiles {
+
+    private final File directory;
+
+    BenchmarkFiles() throws IOException {
+        directory = Files.createTempDirectory("jot-bench").toFile();
+    }
+
+    File file(String name) {
+        return new File(directory, name);
+    }
+
+    void delete() {
+        File[] files = directory.listFiles();
+
+        if(files != null) {
+            for(File file : files)
+                file.delete();
+        }
+
+        directory.delete();
+    }
+}
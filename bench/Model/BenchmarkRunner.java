@@ -0,0 +1,41 @@
+package Model;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the Model benchmarks and writes their results as JSON to bench/results, named after a label such as
+ * the commit being measured, so runs from two commits can be compared.
+ *
+ * Compile the benchmarks against the compiled app with JMH's annotation processor on the classpath, which
+ * generates the benchmark code, then run them with the same classpath:
+ *   javac -cp out:jmh-core.jar:jmh-generator-annprocess.jar:sqlite-jdbc.jar:... -d bench-out bench/Model/*.java
+ *   java -cp bench-out:out:jmh-core.jar:jopt-simple.jar:commons-math3.jar:sqlite-jdbc.jar:... \
+ *       Model.BenchmarkRunner $(git rev-parse --short HEAD) [benchmark regex]
+ *
+ * Setting user.home to a scratch directory keeps the runs away from your own settings.
+ * JMH's own options work too, e.g. org.openjdk.jmh.Main -p corpusSize=1000 -rf json -rff result.json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String label = args.length > 0 ? args[0] : "latest";
+        String include = args.length > 1 ? args[1] : "Model\\..*Benchmark";
+
+        File results = new File("bench/results");
+        results.mkdirs();
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(results, label + ".json").getPath())
+                .build();
+
+        new Runner(options).run();
+    }
+}
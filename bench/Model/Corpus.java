@@ -0,0 +1,101 @@
+package Model;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Builds repeatable corpora of notes for the benchmarks. The same size always gives the same notes.
+ *
+ * Every note's text ends with one of TAGS tags, so a search for a tag finds about size / TAGS notes
+ * whatever the corpus size.
+ */
+class Corpus {
+
+    static final int TAGS = 1000;
+
+    /**
+     * How many notes in a corpus are flagged open
+     */
+    static final int OPEN_NOTES = 20;
+
+    /**
+     * Words per note, a few lines of text
+     */
+    private static final int WORDS_PER_NOTE = 80;
+
+    /**
+     * Corpus notes are given ids well clear of the ones newNote() hands out
+     */
+    private static final long FIRST_ID = 1_000_000_000L;
+
+    private static final String[] WORDS = {
+            "milk", "eggs", "call", "mom", "meeting", "tuesday", "project", "deadline", "remember", "buy",
+            "groceries", "dentist", "appointment", "ideas", "for", "the", "weekend", "book", "flight", "to",
+            "pay", "rent", "water", "plants", "email", "back", "about", "invoice", "pick", "up",
+            "laundry", "fix", "bike", "tire", "read", "chapter", "three", "before", "class", "and"
+    };
+
+    private Corpus() {
+    }
+
+    /**
+     * Inserts a corpus into a database in one transaction
+     * @param database
+     * @param size How many notes
+     * @return The notes, in id order
+     */
+    static ArrayList<Note> insert(Database database, int size) throws SQLException {
+        Random random = new Random(size);
+        ArrayList<Note> notes = new ArrayList<>(size);
+        long now = System.currentTimeMillis();
+
+        for(int i = 0; i < size; i++) {
+            Note note = new Note(FIRST_ID + i,
+                    words(random, 3),
+                    words(random, WORDS_PER_NOTE) + " " + tag(i % TAGS),
+                    new Date(now - i * 60_000L));
+
+            note.setOpen(i < OPEN_NOTES);
+            notes.add(note);
+        }
+
+        database.insertNotes(notes);
+        return notes;
+    }
+
+    /**
+     * @param i
+     * @return A tag no other tag starts with, so a prefix search only finds its own notes
+     */
+    static String tag(int i) {
+        return String.format("tag%04d", i);
+    }
+
+    /**
+     * Swaps the last word before a note's tag, the way a small edit changes a note without it growing
+     * @param note
+     * @param random
+     */
+    static void edit(Note note, Random random) {
+        String text = note.getText();
+        int tagStart = text.lastIndexOf(' ');
+        int wordStart = text.lastIndexOf(' ', tagStart - 1);
+
+        note.setText(text.substring(0, wordStart + 1) + WORDS[random.nextInt(WORDS.length)] + text.substring(tagStart));
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder builder = new StringBuilder();
+
+        for(int i = 0; i < count; i++) {
+            if(i > 0)
+                builder.append(' ');
+
+            builder.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+
+        return builder.toString();
+    }
+}
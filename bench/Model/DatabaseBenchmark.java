@@ -0,0 +1,112 @@
+package Model;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Database calls the application makes most, against corpora of 1k, 10k and 100k notes.
+ * Each corpus is built once per fork in a scratch database of its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseBenchmark {
+
+    /**
+     * How many rows decodeRows() turns into notes per call
+     */
+    private static final int DECODE_ROWS = 1000;
+
+    @Param({"1000", "10000", "100000"})
+    public int corpusSize;
+
+    private BenchmarkFiles files;
+    private Database database;
+
+    /**
+     * The corpus. Kept so updateNote() has notes to edit
+     */
+    private ArrayList<Note> notes;
+
+    /**
+     * A connection of the benchmark's own, for reading raw rows
+     */
+    private Connection rowConnection;
+    private PreparedStatement rowStatement;
+
+    private final Random random = new Random(42);
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws Exception {
+        files = new BenchmarkFiles();
+        database = Database.open(files.file("bench.db"));
+        notes = Corpus.insert(database, corpusSize);
+
+        rowConnection = DriverManager.getConnection("jdbc:sqlite:" + files.file("bench.db"));
+        rowStatement = rowConnection.prepareStatement(" SELECT * FROM " + Database.TABLE_NOTES + " LIMIT " + DECODE_ROWS);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws SQLException {
+        rowConnection.close();
+        database.close();
+        files.delete();
+    }
+
+    @Benchmark
+    public Note newNote() throws SQLException {
+        return database.newNote();
+    }
+
+    /**
+     * A small edit to one note, saved on its own. Includes recording the revision
+     */
+    @Benchmark
+    public Note updateNote() {
+        Note note = notes.get(next++ % notes.size());
+        Corpus.edit(note, random);
+
+        database.updateNote(note);
+        return note;
+    }
+
+    /**
+     * A search that finds about corpusSize / Corpus.TAGS notes
+     */
+    @Benchmark
+    public ArrayList<Note> getNotesByQuery() {
+        return database.getNotes(Corpus.tag(next++ % Corpus.TAGS));
+    }
+
+    @Benchmark
+    public ArrayList<Note> getOpenNotes() {
+        return database.getOpenNotes();
+    }
+
+    /**
+     * Turning rows into notes, with none of them live, so every row is read in full. Reported per row
+     */
+    @Benchmark
+    @OperationsPerInvocation(DECODE_ROWS)
+    public void decodeRows(Blackhole blackhole) throws SQLException {
+        database.clearCache();
+
+        try (ResultSet rows = rowStatement.executeQuery()) {
+            while(rows.next())
+                blackhole.consume(database.getNoteFromResultSet(rows));
+        }
+    }
+}
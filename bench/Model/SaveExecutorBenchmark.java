@@ -0,0 +1,76 @@
+package Model;
+
+import Model.journal.EditJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving a burst of typing through NoteSaveExecutor: every keystroke queues its note, and the burst
+ * ends with the buffer being flushed, the way a pause in typing lets the pending flush run. Keystrokes are
+ * spread over a few notes, like typing into a couple of open windows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveExecutorBenchmark {
+
+    private static final int NOTES_TYPED_INTO = 4;
+
+    /**
+     * Keystrokes per burst
+     */
+    @Param({"1", "20", "200"})
+    public int burstLength;
+
+    /**
+     * Whether keystrokes are also appended to the edit journal
+     */
+    @Param({"false", "true"})
+    public boolean journaled;
+
+    private BenchmarkFiles files;
+    private Database database;
+    private EditJournal journal;
+    private NoteSaveExecutor executor;
+    private ArrayList<Note> notes;
+
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void createExecutor() throws Exception {
+        files = new BenchmarkFiles();
+        database = Database.open(files.file("bench.db"));
+        notes = Corpus.insert(database, 1000);
+
+        journal = journaled ? new EditJournal(files.file(""), EditJournal.DEFAULT_SEGMENT_SIZE) : null;
+        executor = new NoteSaveExecutor(() -> database, journal);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws SQLException {
+        if(journal != null)
+            journal.close();
+
+        database.close();
+        files.delete();
+    }
+
+    @Benchmark
+    public void typeBurst() {
+        for(int i = 0; i < burstLength; i++) {
+            Note note = notes.get(i % NOTES_TYPED_INTO);
+            Corpus.edit(note, random);
+
+            executor.queueNote(note);
+        }
+
+        executor.flushNow();
+    }
+}
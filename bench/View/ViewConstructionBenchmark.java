@@ -0,0 +1,97 @@
+package View;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.input.MouseEvent;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Measures how long it takes to build one note preview and one note window view, loading them from FXML
+ * the way the controllers used to, and building them with ViewFactory.
+ *
+ * Run with the app's classpath (src as a resource root, plus JavaFX):
+ *   java -cp out:src View.ViewConstructionBenchmark [instances]
+ */
+public class ViewConstructionBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        final int instances = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+
+        //views have to be built on the FX thread
+        FutureTask<Void> benchmark = new FutureTask<>(() -> {
+            report("NotePreview.fxml", instances, ViewConstructionBenchmark::loadNotePreviewFxml);
+            report("ViewFactory.createNotePreview", instances, ViewFactory::createNotePreview);
+            report("Note.fxml", instances, ViewConstructionBenchmark::loadNoteFxml);
+            report("ViewFactory.createNote", instances, ViewFactory::createNote);
+            return null;
+        });
+
+        Platform.runLater(benchmark);
+        benchmark.get();
+
+        Platform.exit();
+    }
+
+    /**
+     * Times building a view many times over, after a few rounds of warm up, and prints the
+     * best per-instance time of the measured rounds
+     * @param name
+     * @param instances How many views to build per round
+     * @param builder
+     */
+    private static void report(String name, int instances, ViewBuilder builder) throws Exception {
+        double best = Double.MAX_VALUE;
+
+        for(int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+
+            for(int i = 0; i < instances; i++)
+                builder.build();
+
+            double microsPerInstance = (System.nanoTime() - start) / 1000.0 / instances;
+
+            if(round >= WARMUP_ROUNDS)
+                best = Math.min(best, microsPerInstance);
+        }
+
+        System.out.printf("%-32s %10.1f us/instance%n", name, best);
+    }
+
+    private static Object loadNotePreviewFxml() throws IOException {
+        FXMLLoader loader = new FXMLLoader(ViewLoader.class.getResource("NotePreview.fxml"));
+        loader.setController(new Object());
+        return loader.load();
+    }
+
+    private static Object loadNoteFxml() throws IOException {
+        FXMLLoader loader = new FXMLLoader(ViewLoader.class.getResource("Note.fxml"));
+        loader.setController(new NoteFxmlController());
+        return loader.load();
+    }
+
+    private interface ViewBuilder {
+        Object build() throws Exception;
+    }
+
+    /**
+     * Stands in for NoteController so Note.fxml's event handlers resolve
+     */
+    public static class NoteFxmlController {
+        public void onMouseDragged(MouseEvent event) {}
+        public void onMouseExit(MouseEvent event) {}
+        public void onMouseMoved(MouseEvent event) {}
+        public void onMouseDragStarted(MouseEvent event) {}
+        public void addNewNote() {}
+        public void closeStage() {}
+    }
+}
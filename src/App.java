@@ -1,26 +1,70 @@
-import Model.Database;
+import Model.StartupLoader;
+import Model.StartupTiming;
 import Model.WindowManager;
-import View.ViewLoader;
-import controller.NoteController;
-import controller.NotesListController;
 import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Parent;
-import javafx.scene.Scene;
+import javafx.application.Platform;
+import javafx.application.Preloader;
 import javafx.stage.Stage;
 
-import java.io.IOException;
+import java.util.concurrent.CompletionException;
 
 /**
  * Created by scyth on 4/28/2016.
+ *
+ * Startup is staged: the database starts loading on its own thread before the toolkit starts, the splash
+ * screen shows while the toolkit comes up, and the windows are built once start() is called.
  */
 public class App extends Application {
 
+    /**
+     * Started in main(), so the database opens while the toolkit starts
+     */
+    private static StartupLoader loader;
 
+    private static final String ERROR_DATABASE = "Unable to open the notes database";
+
+    public static void main(String[] args) {
+        StartupTiming.mark("main");
+        loader = StartupLoader.start();
+
+        System.setProperty("javafx.preloader", JotPreloader.class.getName());
+        launch(args);
+    }
+
+    /**
+     * Runs off the JavaFX thread while the splash screen shows
+     */
+    @Override
+    public void init() {
+        StartupTiming.mark("init");
+
+        //launched without main(), such as straight from an IDE's JavaFX run configuration
+        if(loader == null)
+            loader = StartupLoader.start();
+
+        //without a snapshot there's nothing to draw until the notes are read, so wait behind the splash
+        if(!loader.isSnapshotUsable()) {
+            try {
+                loader.await();
+            } catch (CompletionException e) {
+                //takes the splash screen down, and launch() fails with the error
+                notifyPreloader(new Preloader.ErrorNotification(null, ERROR_DATABASE, e.getCause()));
+                throw e;
+            }
+        }
+    }
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        Database db = Database.getInstance();
-        WindowManager manager = new WindowManager();
+        StartupTiming.mark("start");
+
+        //the snapshot's windows are already up when the database fails, and nothing they hold can be saved
+        loader.whenFailed(error -> {
+            notifyPreloader(new Preloader.ErrorNotification(null, ERROR_DATABASE, error));
+            Platform.exit();
+        });
+
+        //the preloader takes the splash screen down once it hears startup is done
+        WindowManager manager = new WindowManager(loader, () -> notifyPreloader(new Preloader.ProgressNotification(1.0)));
     }
 }
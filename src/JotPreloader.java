@@ -0,0 +1,51 @@
+import Model.StartupTiming;
+import View.ViewFactory;
+import javafx.application.Preloader;
+import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+
+/**
+ * Shows the splash screen as soon as the toolkit is up, and takes it down once Jot's first window is showing
+ */
+public class JotPreloader extends Preloader {
+
+    private Stage stage;
+
+    @Override
+    public void start(Stage stage) throws Exception {
+        this.stage = stage;
+
+        StackPane root = new StackPane(new ImageView(ViewFactory.getSplashImage()));
+        root.setStyle("-fx-background-color: transparent;");
+
+        Scene scene = new Scene(root);
+        scene.setFill(Color.TRANSPARENT);
+
+        stage.initStyle(StageStyle.TRANSPARENT);
+        stage.setScene(scene);
+        stage.getIcons().add(ViewFactory.getIconImage());
+        stage.show();
+
+        StartupTiming.mark("splash shown");
+    }
+
+    /**
+     * App reports full progress once its first window is showing
+     * @param info
+     */
+    @Override
+    public void handleApplicationNotification(PreloaderNotification info) {
+        if(info instanceof ProgressNotification && ((ProgressNotification) info).getProgress() >= 1.0)
+            stage.hide();
+    }
+
+    @Override
+    public boolean handleErrorNotification(ErrorNotification info) {
+        stage.hide();
+        return false;
+    }
+}
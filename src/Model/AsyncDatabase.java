@@ -0,0 +1,211 @@
+package Model;
+
+import javafx.application.Platform;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The Database calls the JavaFX thread makes, run somewhere else and handed back as CompletableFutures, so a
+ * slow disk never holds up drawing. Reads each run on a virtual thread of their own, and wait on the read
+ * connection pool without tying up a real thread. Virtual threads need Java 21; on an older runtime the same
+ * work runs on pooled daemon threads. Writes run one at a time on a single writer, in the order
+ * they were asked for, so a note is never deleted before the write that created it.
+ *
+ * Results arrive on whichever thread ran the call. Continue on the JavaFX thread with the FX_THREAD executor:
+ *   AsyncDatabase.getInstance().newNote().thenAcceptAsync(this::showNote, AsyncDatabase.FX_THREAD);
+ */
+public class AsyncDatabase {
+
+    private static final AsyncDatabase instance = new AsyncDatabase(Database::getInstance);
+
+    public static AsyncDatabase getInstance() {
+        return instance;
+    }
+
+    /**
+     * Runs the rest of a future's chain on the JavaFX thread
+     */
+    public static final Executor FX_THREAD = Platform::runLater;
+
+    /**
+     * Looked up on first use, so the facade can be set up before the database opens
+     */
+    private final Supplier<Database> database;
+
+    /**
+     * A new virtual thread per read
+     */
+    private final ExecutorService readExecutor = newThreadPerTaskExecutor(threadFactory("Jot reader ", true));
+
+    /**
+     * The one writer every write goes through, in order
+     */
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(threadFactory("Jot writer", false));
+
+    private AsyncDatabase(Supplier<Database> database) {
+        this.database = database;
+    }
+
+    /**
+     * Virtual threads came in Java 21, so they are looked up rather than linked against. On an older runtime
+     * the facade runs on ordinary daemon threads instead, which behave the same apart from each waiting read
+     * holding on to a real thread.
+     * @param name The name of each thread, or the start of it when numbered
+     * @param numbered Whether to put a count after the name
+     * @return Makes virtual threads if the runtime has them, or daemon platform threads if it doesn't
+     */
+    private static ThreadFactory threadFactory(String name, boolean numbered) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+            builder = numbered ? builderType.getMethod("name", String.class, long.class).invoke(builder, name, 0L)
+                    : builderType.getMethod("name", String.class).invoke(builder, name);
+
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            AtomicLong count = new AtomicLong();
+
+            return task -> {
+                Thread thread = new Thread(task, numbered ? name + count.getAndIncrement() : name);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    /**
+     * @param threadFactory
+     * @return An executor that starts a new thread for every task on Java 21 and later, which is what virtual
+     * threads are meant for, or a cached pool that reuses idle threads on an older runtime
+     */
+    private static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(threadFactory);
+        }
+    }
+
+    /**
+     * @return The executor reads run on, for work that reads the database in its own way, like a paged search
+     */
+    public Executor getReadExecutor() {
+        return readExecutor;
+    }
+
+    /**
+     * @param id
+     * @return The note, or null if there is no note with this id
+     */
+    public CompletableFuture<Note> getNote(long id) {
+        return CompletableFuture.supplyAsync(() -> database.get().getNote(id), readExecutor);
+    }
+
+    /**
+     * @param ids
+     * @return The notes in the same order as their ids. Ids with no note are skipped
+     */
+    public CompletableFuture<ArrayList<Note>> getNotes(long[] ids) {
+        return CompletableFuture.supplyAsync(() -> database.get().getNotes(ids), readExecutor);
+    }
+
+    /**
+     * @param query The words to search for. An empty query returns every note
+     * @param offset How many matches to skip
+     * @param limit The most summaries to read
+     * @return A page of summaries of the matching notes, best match first
+     */
+    public CompletableFuture<ArrayList<NoteSummary>> getNoteSummaries(String query, int offset, int limit) {
+        return CompletableFuture.supplyAsync(() -> database.get().getNoteSummaries(query, offset, limit), readExecutor);
+    }
+
+    /**
+     * @return A brand new, empty note
+     */
+    public CompletableFuture<Note> newNote() {
+        return write(() -> database.get().newNote());
+    }
+
+    /**
+     * Deletes a note along with its history
+     * @param note
+     */
+    public CompletableFuture<Void> deleteNote(Note note) {
+        return write(() -> {
+            database.get().deleteNote(note);
+            return null;
+        });
+    }
+
+    /**
+     * Deletes a group of notes by id in a single transaction
+     * @param ids
+     */
+    public CompletableFuture<Void> deleteNotes(long[] ids) {
+        return write(() -> {
+            database.get().deleteNotes(ids);
+            return null;
+        });
+    }
+
+    /**
+     * Puts a note back to one of its revisions and saves it. Its live note is updated once the restore is saved
+     * @param noteId
+     * @param number
+     * @return A copy of the note as restored, or null if it has no such revision
+     */
+    public CompletableFuture<Note> restoreRevision(long noteId, int number) {
+        return write(() -> database.get().restoreRevision(noteId, number));
+    }
+
+    /**
+     * Waits for every write asked for so far to finish, such as before the database is closed
+     * @param timeout In milliseconds
+     * @return Whether they finished in time
+     */
+    public boolean awaitWrites(long timeout) {
+        try {
+            writeExecutor.submit(() -> { }).get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            e.printStackTrace();
+        }
+
+        return false;
+    }
+
+    /**
+     * Queues a write behind every write before it
+     * @param work
+     * @return Completes with the write's result, or exceptionally with the SQLException it threw
+     */
+    private <T> CompletableFuture<T> write(SQLSupplier<T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return work.get();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, writeExecutor);
+    }
+
+    private interface SQLSupplier<T> {
+        T get() throws SQLException;
+    }
+}
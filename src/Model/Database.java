@@ -2,12 +2,24 @@ package Model;
 
 import Model.color.ColorPack;
 import Model.color.NoteColors;
+import Model.history.Revision;
+import Model.history.RevisionStore;
+import Model.jfr.EventSizes;
+import Model.jfr.NoteCreateEvent;
+import Model.jfr.NoteSaveEvent;
+import Model.jfr.NotesQueryEvent;
+import Model.metrics.Metrics;
 import javafx.scene.paint.Color;
+import org.sqlite.SQLiteConfig;
 
 import java.io.File;
 import java.sql.*;
+import java.text.Normalizer;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 /**
  * Created by scyth on 4/25/2016.
@@ -27,26 +39,76 @@ public class Database {
      * CONSTANTS
      **************************************/
 
-    private final String DATABASE_NAME = "jot.db";
-    private final String DIRECTORY_NAME = "Jot";
+    /**
+     * A constant, so other classes can find the file without opening the database
+     */
+    static final String DATABASE_NAME = "jot.db";
     private final String DATABASE_ABS_PATH;
+    private final String DATABASE_URL;
+
+    static final String TABLE_NOTES = "notes";
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_TITLE = "title";
+    static final String COLUMN_CONTENT = "content";
+    static final String COLUMN_DATE_SAVED = "dateSaved";
+    static final String COLUMN_OPEN = "open";
+    static final String COLUMN_COLOR = "color";
+
+    static final String TABLE_NOTES_SEARCH = "notes_fts";
 
-    private static final String TABLE_NOTES = "notes";
-    private static final String COLUMN_ID = "id";
-    private static final String COLUMN_TITLE = "title";
-    private static final String COLUMN_CONTENT = "content";
-    private static final String COLUMN_DATE_SAVED = "dateSaved";
-    private static final String COLUMN_OPEN = "open";
-    private static final String COLUMN_COLOR = "color";
+    /**
+     * Roughly how many words a search result's snippet holds
+     */
+    private static final int SNIPPET_TOKENS = 12;
 
     private static final String TABLE_NEXT_ID = "nextID";
     private static final String COLUMN_NEXT_ID = "id";
 
     /**
-     * My connection to the database file
+     * Setting for how many read-only connections are kept open
+     */
+    public static final String SETTING_READ_CONNECTIONS = "jot.db.readConnections";
+
+    private static final int DEFAULT_READ_CONNECTIONS = 2;
+
+    /**
+     * Setting for how many note ids are reserved in the nextID table at a time
+     */
+    public static final String SETTING_ID_BLOCK_SIZE = "jot.db.idBlockSize";
+
+    private static final int DEFAULT_ID_BLOCK_SIZE = 64;
+
+    /**
+     * How hard commits work to reach the disk
+     */
+    private final Durability durability = Durability.fromSettings();
+
+    /**
+     * My only connection that writes to the database file. Every statement on it is
+     * run while holding this Database's lock.
      */
     private Connection connection;
 
+    /**
+     * Read-only connections that queries run on, so they never wait behind writes
+     */
+    private ReadConnectionPool readers;
+
+    /**
+     * Keeps the schema up to date, and finishes upgrades that were left half done in the background
+     */
+    private MigrationRunner migrations;
+
+    /**
+     * Each note's revision history, written in the same transactions as the notes
+     */
+    private RevisionStore revisions;
+
+    /**
+     * Statement used to read the version of a note that is in the database, before it is replaced
+     */
+    private PreparedStatement preparedSavedVersionStatement;
+
     /**
      * Statement used to insert new notes into the database
      */
@@ -63,56 +125,237 @@ public class Database {
     private PreparedStatement preparedNoteUpdateStatement;
 
     /**
-     * Statement used to query notes, optionally with a specific
-     * title criteria
+     * Statement used to move the end of the reserved block of ids
+     */
+    private PreparedStatement preparedReserveIdsStatement;
+
+    /**
+     * Query for notes, optionally with a specific title criteria
+     */
+    private static final String SQL_GET_NOTES = " SELECT * FROM " + TABLE_NOTES + " " +
+                                                " WHERE " + COLUMN_TITLE + " LIKE ? ";
+
+    /**
+     * Full-text query for notes whose title or content match, best match first. The title is
+     * weighted ten times more than the content.
+     */
+    private static final String SQL_SEARCH_NOTES = " SELECT " + TABLE_NOTES + ".*, " +
+            " snippet(" + TABLE_NOTES_SEARCH + ", -1, '', '', '...', " + SNIPPET_TOKENS + ") AS snippet, " +
+            " bm25(" + TABLE_NOTES_SEARCH + ", 10.0, 1.0) AS rank " +
+            " FROM " + TABLE_NOTES_SEARCH +
+            " JOIN " + TABLE_NOTES + " ON " + TABLE_NOTES + "." + COLUMN_ID + " = " + TABLE_NOTES_SEARCH + ".rowid " +
+            " WHERE " + TABLE_NOTES_SEARCH + " MATCH ? " +
+            " ORDER BY rank " +
+            " LIMIT ? ";
+
+    /**
+     * Index that keyset pages of notes are read through, most recently saved first
+     */
+    static final String INDEX_NOTES_DATE_SAVED = "notes_date_saved";
+
+    /**
+     * The columns a NoteSummary is read from. Only the start of the content is read, so a list of
+     * summaries stays small however long the notes are
+     * @param table The table name and a dot, for queries that join the notes table, or an empty string
+     */
+    private static String summaryColumns(String table) {
+        return table + COLUMN_ID + ", " +
+                table + COLUMN_TITLE + ", " +
+                table + COLUMN_DATE_SAVED + ", " +
+                table + COLUMN_COLOR + ", " +
+                " substr(" + table + COLUMN_CONTENT + ", 1, " + NoteSummary.SNIPPET_LENGTH + ") AS " + COLUMN_SNIPPET;
+    }
+
+    /**
+     * Column of summary queries holding the start of the content
+     */
+    private static final String COLUMN_SNIPPET = "snippet";
+
+    /**
+     * Builds a query for the page of notes that comes after a (dateSaved, id) key, most recently saved first
+     * @param columns What to select
+     * @param filter Any extra conditions, starting with AND, or an empty string
+     */
+    private static String notesPageQuery(String columns, String filter) {
+        return " SELECT " + columns + " FROM " + TABLE_NOTES + " " +
+                " WHERE (" + COLUMN_DATE_SAVED + ", " + COLUMN_ID + ") < (?, ?) " +
+                filter +
+                " ORDER BY " + COLUMN_DATE_SAVED + " DESC, " + COLUMN_ID + " DESC " +
+                " LIMIT ? ";
+    }
+
+    /**
+     * Only notes that match a full-text search
+     */
+    private static final String FILTER_MATCH = " AND " + COLUMN_ID + " IN (SELECT rowid FROM " + TABLE_NOTES_SEARCH +
+            " WHERE " + TABLE_NOTES_SEARCH + " MATCH ?) ";
+
+    /**
+     * Only notes whose title contains a string
+     */
+    private static final String FILTER_TITLE = " AND " + COLUMN_TITLE + " LIKE ? ";
+
+    /**
+     * Pages of every note, of notes matching a full-text search, and of notes whose title contains a string
+     */
+    private static final String SQL_GET_NOTES_PAGE = notesPageQuery("*", "");
+    private static final String SQL_SEARCH_NOTES_PAGE = notesPageQuery("*", FILTER_MATCH);
+    private static final String SQL_GET_NOTES_PAGE_BY_TITLE = notesPageQuery("*", FILTER_TITLE);
+
+    /**
+     * The same pages, as summaries
      */
-    private PreparedStatement preparedGetNotesStatement;
+    private static final String SQL_GET_SUMMARIES_PAGE = notesPageQuery(summaryColumns(""), "");
+    private static final String SQL_SEARCH_SUMMARIES_PAGE = notesPageQuery(summaryColumns(""), FILTER_MATCH);
+    private static final String SQL_GET_SUMMARIES_PAGE_BY_TITLE = notesPageQuery(summaryColumns(""), FILTER_TITLE);
 
     /**
-     * A statement used to query all open notes from a previous application instance
+     * Ranked full-text query for summaries of the notes whose title or content match, best match first
      */
-    private PreparedStatement preparedGetOpenNotesStatement;
+    private static final String SQL_SEARCH_SUMMARIES = " SELECT " + summaryColumns(TABLE_NOTES + ".") +
+            " FROM " + TABLE_NOTES_SEARCH +
+            " JOIN " + TABLE_NOTES + " ON " + TABLE_NOTES + "." + COLUMN_ID + " = " + TABLE_NOTES_SEARCH + ".rowid " +
+            " WHERE " + TABLE_NOTES_SEARCH + " MATCH ? " +
+            " ORDER BY bm25(" + TABLE_NOTES_SEARCH + ", 10.0, 1.0), " + TABLE_NOTES + "." + COLUMN_ID + " DESC " +
+            " LIMIT ? OFFSET ? ";
 
+    /**
+     * Query for summaries of the notes whose title contains a string, for when there is no search index
+     */
+    private static final String SQL_GET_SUMMARIES_BY_TITLE = " SELECT " + summaryColumns("") + " FROM " + TABLE_NOTES + " " +
+            " WHERE " + COLUMN_TITLE + " LIKE ? " +
+            " ORDER BY " + COLUMN_DATE_SAVED + " DESC, " + COLUMN_ID + " DESC " +
+            " LIMIT ? OFFSET ? ";
+
+    /**
+     * What the search index's tokenizer treats as the space between words, and the accent marks it drops
+     */
+    private static final Pattern SEARCH_SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}\\p{Co}]+");
+    private static final Pattern SEARCH_DIACRITICS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Query for a single note by id
+     */
+    private static final String SQL_GET_NOTE = " SELECT * FROM " + TABLE_NOTES + " " +
+                                               " WHERE " + COLUMN_ID + " = ? ";
+
+    /**
+     * How many ids are looked up per query by getNotes(long[])
+     */
+    private static final int IDS_PER_QUERY = 100;
+
+    /**
+     * Query for up to IDS_PER_QUERY notes by id
+     */
+    private static final String SQL_GET_NOTES_BY_ID = " SELECT * FROM " + TABLE_NOTES + " " +
+            " WHERE " + COLUMN_ID + " IN (" + String.join(", ", Collections.nCopies(IDS_PER_QUERY, "?")) + ") ";
+
+    /**
+     * Query for all open notes from a previous application instance
+     */
+    private static final String SQL_GET_OPEN_NOTES = " SELECT * FROM " + TABLE_NOTES + " " +
+                                                     " WHERE " + COLUMN_OPEN + " = 1";
+
+    /**
+     * Partial index over only the open notes. Its WHERE clause has to match SQL_GET_OPEN_NOTES for SQLite to use it
+     */
+    private static final String INDEX_NOTES_OPEN = "notes_open";
+
+
+    /**
+     * False if this SQLite build has no FTS5 support, in which case searches fall back to title LIKE queries
+     */
+    private boolean searchIndexAvailable = false;
+
+    /**
+     * The next id handed out to a new note
+     */
     private long nextID = 0;
 
+    /**
+     * The first id that has not been reserved yet. The nextID table stores this value, so ids below it
+     * are never reused even if the application stops before handing them all out.
+     */
+    private long reservedID = 0;
+
+    /**
+     * How many ids are reserved per write to the nextID table
+     */
+    private final int idBlockSize = Math.max(1, Settings.getInstance().getInt(SETTING_ID_BLOCK_SIZE, DEFAULT_ID_BLOCK_SIZE));
+
+    /**
+     * The one live instance of every note handed out, so re-reading a note never makes a copy of it
+     */
+    private final NoteCache cache = new NoteCache();
+
+    /**
+     * Everyone who is told about committed changes
+     */
+    private final CopyOnWriteArrayList<DatabaseListener> listeners = new CopyOnWriteArrayList<>();
+
     /**
      * Creates a database object
      */
     private Database() {
-        final File directory = new File(System.getProperty("user.home") + File.separator + "Documents" +
-                File.separator + DIRECTORY_NAME);
+        this(new File(Settings.getInstance().getDataDirectory(), DATABASE_NAME));
+    }
 
-        if(!directory.exists()) {
-            directory.mkdirs();
-        }
+    /**
+     * Opens a database in a file of its own, apart from the application's, such as for benchmarks.
+     * The application itself always uses getInstance()
+     * @param file The database file. It is created if it doesn't exist
+     * @return
+     */
+    public static Database open(File file) {
+        return new Database(file);
+    }
 
-        DATABASE_ABS_PATH = directory + File.separator + DATABASE_NAME;
+    private Database(File file) {
+        DATABASE_ABS_PATH = file.getPath();
+        DATABASE_URL = "jdbc:sqlite:" + DATABASE_ABS_PATH;
 
         System.out.println("Database Directory: " + DATABASE_NAME);
 
         //create the database
         try {
             //load driver and establish connection
-            org.sqlite.JDBC jdbc = new org.sqlite.JDBC();
-            connection = DriverManager.getConnection("jdbc:sqlite:" + DATABASE_ABS_PATH);
+            //WAL journaling lets the read connections keep querying while this one writes
+            SQLiteConfig config = new SQLiteConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setSynchronous(durability.synchronousMode);
+            config.setBusyTimeout(5000);
+            connection = config.createConnection(DATABASE_URL);
 
             //find out if our Notes table already exists
             DatabaseMetaData meta = connection.getMetaData();
             ResultSet resultSet = meta.getTables(null, null, TABLE_NOTES, new String[] {"TABLE"} );
 
+            boolean notesTableExists = resultSet.next();
+            resultSet.close();
+
+            migrations = new MigrationRunner(this, connection);
+
             //check if the query came up empty: IE if the notes table does not yet exist
-            if(!resultSet.next()) {
-                //create the table if it doesn't exist
+            if(!notesTableExists) {
+                //create the table if it doesn't exist. It is made with the latest schema
                 createNotesTable();
+                RevisionStore.createTable(connection);
+                migrations.markCurrent();
             } else {
                 //the notes table did already exist
                 System.out.println("Notes table already existed.");
+
+                //bring databases from older versions up to date. Anything slow is left for the background
+                migrations.migrate();
             }
 
             //find out if our next usable ID table already exists
             //If it does not exist, we will create the table
             resultSet = meta.getTables(null, null, TABLE_NEXT_ID, new String[] { "TABLE" });
-            if(!resultSet.next()) {
+            boolean nextIdTableExists = resultSet.next();
+            resultSet.close();
+
+            if(!nextIdTableExists) {
                 createNextIdTable();
             }
              //but if the table does exist, we need to get
@@ -121,6 +364,11 @@ public class Database {
                 initNextId();
             } //else
 
+            //the full-text index is built on top of the notes table
+            createSearchIndex();
+
+            createNotesIndexes();
+
             //get my prepared update statement for updating notes in the database
             preparedNoteUpdateStatement = connection.prepareStatement(" UPDATE " + TABLE_NOTES +
                     " SET " +   COLUMN_TITLE + " = ?, " +
@@ -147,17 +395,29 @@ public class Database {
                             "?)"        //color
                         );
 
-            //select any notes where the title contains the string supplied in place of '?'
-            preparedGetNotesStatement = connection.prepareStatement( " SELECT * FROM " + TABLE_NOTES + " " +
-                                                                    " WHERE " + COLUMN_TITLE + " LIKE ? ");
+            //the table only ever has one row
+            preparedReserveIdsStatement = connection.prepareStatement(
+                    " UPDATE " + TABLE_NEXT_ID + " SET " + COLUMN_NEXT_ID + " = ? ");
 
             preparedDeleteNoteStatement = connection.prepareStatement(
                     " DELETE FROM " + TABLE_NOTES + " " +
                     " WHERE " + COLUMN_ID + " = ? "
             );
 
-            preparedGetOpenNotesStatement = connection.prepareStatement(" SELECT * FROM " + TABLE_NOTES + " " +
-                                                                    " WHERE " + COLUMN_OPEN + " = ?");
+            preparedSavedVersionStatement = connection.prepareStatement(
+                    " SELECT " + COLUMN_TITLE + ", " + COLUMN_CONTENT + ", " + COLUMN_DATE_SAVED + ", " +
+                                 COLUMN_OPEN + ", " + COLUMN_COLOR +
+                    " FROM " + TABLE_NOTES +
+                    " WHERE " + COLUMN_ID + " = ? ");
+
+            revisions = new RevisionStore(connection, Settings.getInstance().getInt(
+                    RevisionStore.SETTING_CHECKPOINT_INTERVAL, RevisionStore.DEFAULT_CHECKPOINT_INTERVAL));
+
+            //the tables exist now, so the read-only connections can be opened
+            readers = new ReadConnectionPool(DATABASE_URL,
+                    Settings.getInstance().getInt(SETTING_READ_CONNECTIONS, DEFAULT_READ_CONNECTIONS));
+
+            migrations.startBackgroundWork();
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -176,30 +436,126 @@ public class Database {
 
         if(nextIdQuery.next()) {
             //we have a first returned object. YAY WE HAVE A NEXT ID
+            //whatever was left of the last run's reserved block is skipped
             nextID = nextIdQuery.getLong(nextIdQuery.findColumn(COLUMN_NEXT_ID));
+            reservedID = nextID;
             System.out.println("Next id: " + nextID);
         } else {
             //error
             System.out.println("ERROR: NO FIRST ID IN TABLE " + TABLE_NEXT_ID + "!!!");
         }
+
+        //an unfinished statement would keep tables from being dropped by migrations
+        nextIdQuery.close();
+        statement.close();
     }
 
 
     private void createNotesTable() throws SQLException {
+        createNotesTable(connection, TABLE_NOTES);
+    }
+
+    /**
+     * Creates a notes table. The id is the table's rowid, dateSaved is milliseconds since the epoch,
+     * open is 0 or 1 and color is a packed ARGB int, so rows are read without parsing any strings.
+     * @param connection
+     * @param table The name of the table
+     */
+    static void createNotesTable(Connection connection, String table) throws SQLException {
         //table does not exist. Create it!
         Statement statement = connection.createStatement();
 
-        String createNotesTable = "CREATE TABLE " + TABLE_NOTES + "(" +
-                                COLUMN_ID +         " INT PRIMARY KEY, " +
+        String createNotesTable = "CREATE TABLE " + table + "(" +
+                                COLUMN_ID +         " INTEGER PRIMARY KEY, " +
                                 COLUMN_TITLE +      " TEXT, " +
                                 COLUMN_CONTENT +    " TEXT, " +
-                                COLUMN_DATE_SAVED + " DATE, " +
-                                COLUMN_OPEN       + " TEXT, " +
-                                COLUMN_COLOR      + " TEXT " +
+                                COLUMN_DATE_SAVED + " INTEGER NOT NULL, " +
+                                COLUMN_OPEN       + " INTEGER NOT NULL DEFAULT 0, " +
+                                COLUMN_COLOR      + " INTEGER NOT NULL " +
                                 ")";
         statement.executeUpdate(createNotesTable);
         statement.close();
-        System.out.println("Table " + TABLE_NOTES + " created.");
+        System.out.println("Table " + table + " created.");
+    }
+
+    /**
+     * Creates the indexes on the notes table, if they do not exist yet
+     */
+    private void createNotesIndexes() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            //pages of notes are read most recently saved first
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + INDEX_NOTES_DATE_SAVED +
+                    " ON " + TABLE_NOTES + "(" + COLUMN_DATE_SAVED + ", " + COLUMN_ID + ")");
+
+            //only a handful of notes are ever open, so the index only holds those
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + INDEX_NOTES_OPEN +
+                    " ON " + TABLE_NOTES + "(" + COLUMN_ID + ") WHERE " + COLUMN_OPEN + " = 1");
+        }
+    }
+
+    /**
+     * Creates the FTS5 index over note titles and content if it does not exist yet, along with the triggers
+     * that keep it in sync with the notes table. Notes that were saved before the index existed are indexed
+     * when it is created.
+     */
+    private void createSearchIndex() {
+        try (Statement statement = connection.createStatement()) {
+            ResultSet existing = statement.executeQuery("SELECT name FROM sqlite_master " +
+                    " WHERE type = 'table' AND name = '" + TABLE_NOTES_SEARCH + "'");
+            boolean exists = existing.next();
+            existing.close();
+
+            if(!exists) {
+                //an external content table: the index reads note text from the notes table
+                //instead of keeping a second copy of it
+                statement.executeUpdate("CREATE VIRTUAL TABLE " + TABLE_NOTES_SEARCH + " USING fts5(" +
+                        COLUMN_TITLE + ", " +
+                        COLUMN_CONTENT + ", " +
+                        "content='" + TABLE_NOTES + "', " +
+                        "content_rowid='" + COLUMN_ID + "', " +
+                        "tokenize='unicode61 remove_diacritics 2', " +
+                        "prefix='2 3')");
+
+                //index every note that already exists
+                statement.executeUpdate("INSERT INTO " + TABLE_NOTES_SEARCH + "(" + TABLE_NOTES_SEARCH + ") VALUES ('rebuild')");
+
+                System.out.println("Search index " + TABLE_NOTES_SEARCH + " created.");
+            }
+
+            //the triggers go away whenever the notes table is rebuilt, so they are checked every time
+            createSearchTriggers(statement);
+
+            searchIndexAvailable = true;
+        } catch (SQLException e) {
+            System.out.println("Full-text search is unavailable, searching titles only.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the triggers that keep the search index in step with the notes table, if they do not exist yet
+     * @param statement
+     */
+    private void createSearchTriggers(Statement statement) throws SQLException {
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + TABLE_NOTES_SEARCH + "_insert AFTER INSERT ON " + TABLE_NOTES + " BEGIN " +
+                " INSERT INTO " + TABLE_NOTES_SEARCH + "(rowid, " + COLUMN_TITLE + ", " + COLUMN_CONTENT + ") " +
+                " VALUES (new." + COLUMN_ID + ", new." + COLUMN_TITLE + ", new." + COLUMN_CONTENT + "); " +
+                " END");
+
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + TABLE_NOTES_SEARCH + "_delete AFTER DELETE ON " + TABLE_NOTES + " BEGIN " +
+                " INSERT INTO " + TABLE_NOTES_SEARCH + "(" + TABLE_NOTES_SEARCH + ", rowid, " + COLUMN_TITLE + ", " + COLUMN_CONTENT + ") " +
+                " VALUES ('delete', old." + COLUMN_ID + ", old." + COLUMN_TITLE + ", old." + COLUMN_CONTENT + "); " +
+                " END");
+
+        //only re-index when the text actually changed, not when a note is just opened, closed or recolored
+        statement.executeUpdate("CREATE TRIGGER IF NOT EXISTS " + TABLE_NOTES_SEARCH + "_update AFTER UPDATE ON " + TABLE_NOTES +
+                " WHEN old." + COLUMN_TITLE + " IS NOT new." + COLUMN_TITLE +
+                " OR old." + COLUMN_CONTENT + " IS NOT new." + COLUMN_CONTENT + " BEGIN " +
+                " INSERT INTO " + TABLE_NOTES_SEARCH + "(" + TABLE_NOTES_SEARCH + ", rowid, " + COLUMN_TITLE + ", " + COLUMN_CONTENT + ") " +
+                " VALUES ('delete', old." + COLUMN_ID + ", old." + COLUMN_TITLE + ", old." + COLUMN_CONTENT + "); " +
+                " INSERT INTO " + TABLE_NOTES_SEARCH + "(rowid, " + COLUMN_TITLE + ", " + COLUMN_CONTENT + ") " +
+                " VALUES (new." + COLUMN_ID + ", new." + COLUMN_TITLE + ", new." + COLUMN_CONTENT + "); " +
+                " END");
     }
 
     private void createNextIdTable() throws SQLException{
@@ -217,53 +573,184 @@ public class Database {
         System.out.println("Next IDs table created: " );
     }
 
-    public Note newNote() throws SQLException {
+    public synchronized Note newNote() throws SQLException {
+        long start = System.nanoTime();
+        NoteCreateEvent event = new NoteCreateEvent();
+        event.begin();
 
-        final int ID_INDEX = 1,
-                TITLE_INDEX = 2,
-                TEXT_INDEX = 3,
-                DATE_INDEX = 4,
-                OPEN_INDEX = 5,
-                COLOR_INDEX = 6;
+        Note note = new Note(reserveIds(1));
 
-        Note note = new Note(getNextID());
-        Color color = note.getColor();
+        bindNewNote(note);
+        preparedNewNoteStatement.execute();
 
-        preparedNewNoteStatement.setLong(ID_INDEX, note.id);
-        preparedNewNoteStatement.setString(TITLE_INDEX, note.getTitle());
-        preparedNewNoteStatement.setString(TEXT_INDEX, note.getText());
-        preparedNewNoteStatement.setDate(DATE_INDEX, new java.sql.Date(note.getDateSaved().getTime()));
-        //TODO: FIX THIS
-        preparedNewNoteStatement.setBoolean(OPEN_INDEX, /*note.isOpen()*/false);
-        preparedNewNoteStatement.setString(COLOR_INDEX, color.getRed() + "," + color.getGreen() + "," + color.getBlue());
+        cache.putIfAbsent(note);
+        Metrics.query("newNote").recordSince(start);
 
-        preparedNewNoteStatement.execute();
+        event.end();
+        if(event.shouldCommit()) {
+            event.noteId = note.id;
+            event.commit();
+        }
+
+        notifyListeners(DatabaseChange.inserted(Collections.singletonList(note)));
 
         return note;
     }
 
-    public Note getNote(long id) {
-        try{
-            Statement statement = connection.createStatement();
+    /**
+     * Creates a group of brand new notes in a single transaction. Their ids are reserved with at most
+     * one write, so the cost of creating notes grows with the number of notes rather than the number of commits.
+     * @param count How many notes to create
+     * @return The new notes, in id order
+     * @throws SQLException If any insert fails. None of the notes are created in that case
+     */
+    public synchronized ArrayList<Note> newNotes(int count) throws SQLException {
+        ArrayList<Note> notes = new ArrayList<>(Math.max(0, count));
+
+        if(count <= 0)
+            return notes;
+
+        long firstId = reserveIds(count);
 
-            String sql = "SELECT * " +
-                        " FROM " + TABLE_NEXT_ID + " " +
-                        " WHERE " + COLUMN_ID + " = " + id + " ";
+        for(int i = 0; i < count; i++) {
+            notes.add(new Note(firstId + i));
+        }
+
+        insertNotes(notes);
+
+        return notes;
+    }
 
-            ResultSet result = statement.executeQuery(sql);
+    /**
+     * Inserts a group of notes that already have their IDs in a single transaction
+     * @param notes
+     * @throws SQLException If any insert fails. None of the notes are inserted in that case
+     */
+    public void insertNotes(Collection<Note> notes) throws SQLException {
+        if(notes.isEmpty())
+            return;
+
+        runInTransaction(() -> {
+            for(Note note : notes) {
+                bindNewNote(note);
+                preparedNewNoteStatement.addBatch();
+            }
 
-            result.next();
+            preparedNewNoteStatement.executeBatch();
+        });
 
-            Note note = new Note(id, result.getString(COLUMN_TITLE), result.getString(COLUMN_CONTENT), new Date(result.getDate(COLUMN_DATE_SAVED).getTime()));
+        for(Note note : notes)
+            cache.putIfAbsent(note);
 
-            statement.close();
+        notifyListeners(DatabaseChange.inserted(notes));
+    }
+
+    /**
+     * Parameter indexes of preparedNewNoteStatement
+     */
+    private static final int NEW_NOTE_ID_INDEX = 1,
+            NEW_NOTE_TITLE_INDEX = 2,
+            NEW_NOTE_TEXT_INDEX = 3,
+            NEW_NOTE_DATE_INDEX = 4,
+            NEW_NOTE_OPEN_INDEX = 5,
+            NEW_NOTE_COLOR_INDEX = 6;
+
+    /**
+     * Fills in preparedNewNoteStatement's parameters with a note's values
+     * @param note
+     */
+    private void bindNewNote(Note note) throws SQLException {
+        preparedNewNoteStatement.setLong(NEW_NOTE_ID_INDEX, note.id);
+        preparedNewNoteStatement.setString(NEW_NOTE_TITLE_INDEX, note.getTitle());
+        preparedNewNoteStatement.setString(NEW_NOTE_TEXT_INDEX, note.getText());
+        preparedNewNoteStatement.setLong(NEW_NOTE_DATE_INDEX, note.getDateSaved().getTime());
+        preparedNewNoteStatement.setInt(NEW_NOTE_OPEN_INDEX, note.isOpen() ? 1 : 0);
+        preparedNewNoteStatement.setInt(NEW_NOTE_COLOR_INDEX, NoteColors.pack(note.getColor()));
+    }
 
+    /**
+     * Finds a note by id. Notes that are already live are returned without touching the database
+     * @param id
+     * @return The note, or null if there is no note with this id
+     */
+    public Note getNote(long id) {
+        Note note = cache.get(id);
+        if(note != null)
             return note;
 
+        long start = System.nanoTime();
+
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            PreparedStatement statement = reader.prepare(SQL_GET_NOTE);
+            statement.setLong(1, id);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if(result.next())
+                    note = getNoteFromResultSet(result);
+            }
         } catch(SQLException ex) {
             System.out.println("There was an error loading note #" + id);
-            return null;
+            ex.printStackTrace();
+        }
+
+        Metrics.query("note").recordSince(start);
+        return note;
+    }
+
+    /**
+     * Finds a group of notes by id. Live notes come from the cache, and the rest are read
+     * IDS_PER_QUERY at a time.
+     * @param ids
+     * @return The notes in the same order as their ids. Ids with no note are skipped
+     */
+    public ArrayList<Note> getNotes(long[] ids) {
+        HashMap<Long, Note> found = new HashMap<>();
+        ArrayList<Long> missing = new ArrayList<>();
+
+        for(long id : ids) {
+            Note note = cache.get(id);
+
+            if(note != null)
+                found.put(id, note);
+            else
+                missing.add(id);
+        }
+
+        if(!missing.isEmpty()) {
+            long queryStart = System.nanoTime();
+
+            try (ReadConnectionPool.Reader reader = readers.borrow()) {
+                PreparedStatement statement = reader.prepare(SQL_GET_NOTES_BY_ID);
+
+                for(int start = 0; start < missing.size(); start += IDS_PER_QUERY) {
+                    //a short last group repeats its last id, so the one statement fits every group
+                    for(int i = 0; i < IDS_PER_QUERY; i++)
+                        statement.setLong(i + 1, missing.get(Math.min(start + i, missing.size() - 1)));
+
+                    try (ResultSet results = statement.executeQuery()) {
+                        while(results.next()) {
+                            Note note = getNoteFromResultSet(results);
+                            found.put(note.id, note);
+                        }
+                    }
+                }
+            } catch(SQLException ex) {
+                System.out.println("There was an error loading " + missing.size() + " notes");
+                ex.printStackTrace();
+            }
+
+            Metrics.query("notesById").recordSince(queryStart);
         }
+
+        ArrayList<Note> notes = new ArrayList<>(ids.length);
+        for(long id : ids) {
+            Note note = found.get(id);
+
+            if(note != null)
+                notes.add(note);
+        }
+
+        return notes;
     }
 
     /**
@@ -277,86 +764,431 @@ public class Database {
 
 
     /**
-     * Queries for all notes whose title contains a given string
-     * @param query The string that the title must contain to be returned
+     * Queries for all notes whose title or content match a search string, best match first.
+     * An empty query returns every note.
+     * @param query The words to search for. The last word may be partially typed
      * @return
      */
     public ArrayList<Note> getNotes(String query) {
+        if(searchIndexAvailable && toMatchExpression(query) != null) {
+            ArrayList<Note> notes = new ArrayList<>();
 
-        final int QUERY_TITLE_INDEX = 1;
+            for(SearchResult result : searchNotes(query, Integer.MAX_VALUE))
+                notes.add(result.note);
 
-        ArrayList<Note> notes  = new ArrayList<>();
+            return notes;
+        }
 
-        try {
-            preparedGetNotesStatement.setString(1, "%" + query + "%");
+        ArrayList<Note> notes  = new ArrayList<>();
+        long start = System.nanoTime();
+        NotesQueryEvent event = new NotesQueryEvent();
+        event.begin();
 
-            ResultSet results = preparedGetNotesStatement.executeQuery();
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            PreparedStatement statement = reader.prepare(SQL_GET_NOTES);
+            statement.setString(1, "%" + query.trim() + "%");
 
-            while(results.next()) {
+            try (ResultSet results = statement.executeQuery()) {
+                //an interrupted query is being cancelled, so stop reading rows nobody will use
+                while(results.next() && !Thread.currentThread().isInterrupted()) {
 
-                notes.add(getNoteFromResultSet(results));
-            } //while(results.next())
+                    notes.add(getNoteFromResultSet(results));
+                } //while(results.next())
+            }
         } catch (SQLException e1) {
             e1.printStackTrace();
         } finally {
+            Metrics.query("notes").recordSince(start);
+            commitQueryEvent(event, "notes", query, notes, Note::getText);
             return notes;
         }
     }
 
-    public ArrayList<Note> getOpenNotes() {
-        ArrayList<Note> openNotes = new ArrayList<>();
+    /**
+     * Opens a cursor over the notes matching a search string, most recently saved first. Notes are read
+     * one page at a time as the cursor is advanced, so callers can show the first page right away and stop
+     * reading whenever they like.
+     * @param query The words notes must match, or an empty string for every note
+     * @param pageSize How many notes are read from the database at a time
+     * @return
+     */
+    public NoteCursor<Note> openCursor(String query, int pageSize) {
+        return new NoteCursor<>(this::getNotesPage, note -> note.getDateSaved().getTime(), note -> note.id, query, pageSize);
+    }
 
-        try {
-            preparedGetOpenNotesStatement.setBoolean(1, true);
-            ResultSet set = preparedGetOpenNotesStatement.executeQuery();
+    /**
+     * Same as openCursor(), but reads summaries instead of whole notes, for showing lists of notes
+     * @param query The words notes must match, or an empty string for every note
+     * @param pageSize How many notes are read from the database at a time
+     * @return
+     */
+    public NoteCursor<NoteSummary> openSummaryCursor(String query, int pageSize) {
+        return new NoteCursor<>(this::getSummariesPage, summary -> summary.dateSaved, summary -> summary.id, query, pageSize);
+    }
+
+    /**
+     * Reads the page of notes that comes right after a (dateSaved, id) key, most recently saved first
+     * @param query The words notes must match, or an empty string for every note
+     * @param beforeDateSaved The dateSaved of the last note of the previous page, or Long.MAX_VALUE for the first page
+     * @param beforeId The id of the last note of the previous page, or Long.MAX_VALUE for the first page
+     * @param limit The most notes to read
+     * @return
+     */
+    ArrayList<Note> getNotesPage(String query, long beforeDateSaved, long beforeId, int limit) {
+        return readPage(SQL_GET_NOTES_PAGE, SQL_SEARCH_NOTES_PAGE, SQL_GET_NOTES_PAGE_BY_TITLE, this::getNoteFromResultSet,
+                Note::getText, query, beforeDateSaved, beforeId, limit);
+    }
 
+    /**
+     * Same as getNotesPage(), but reads summaries
+     */
+    ArrayList<NoteSummary> getSummariesPage(String query, long beforeDateSaved, long beforeId, int limit) {
+        return readPage(SQL_GET_SUMMARIES_PAGE, SQL_SEARCH_SUMMARIES_PAGE, SQL_GET_SUMMARIES_PAGE_BY_TITLE, this::getSummaryFromResultSet,
+                NoteSummary::getSnippet, query, beforeDateSaved, beforeId, limit);
+    }
 
-            while(set.next()) {
-                Note note = getNoteFromResultSet(set);
-                openNotes.add(note);
+    /**
+     * Reads a keyset page with whichever of the three page queries fits the search string
+     * @param allSql The query for every note
+     * @param searchSql The query for notes matching a full-text search
+     * @param titleSql The query for notes whose title contains a string, used when there is no search index
+     * @param rowReader Turns each row into a result
+     * @param textOf The text of a result, for measuring how much was read
+     */
+    private <T> ArrayList<T> readPage(String allSql, String searchSql, String titleSql, RowReader<T> rowReader,
+                                      Function<T, String> textOf, String query, long beforeDateSaved, long beforeId, int limit) {
+        ArrayList<T> page = new ArrayList<>();
+        long start = System.nanoTime();
+        NotesQueryEvent event = new NotesQueryEvent();
+        event.begin();
+
+        String match = toMatchExpression(query);
+
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            PreparedStatement statement;
+            int index = 1;
+
+            if(match == null) {
+                statement = reader.prepare(allSql);
+            } else if(searchIndexAvailable) {
+                statement = reader.prepare(searchSql);
+            } else {
+                statement = reader.prepare(titleSql);
+            }
+
+            statement.setLong(index++, beforeDateSaved);
+            statement.setLong(index++, beforeId);
+
+            if(match != null)
+                statement.setString(index++, searchIndexAvailable ? match : "%" + query.trim() + "%");
+
+            statement.setInt(index, limit);
+
+            try (ResultSet results = statement.executeQuery()) {
+                while(results.next() && !Thread.currentThread().isInterrupted()) {
+                    page.add(rowReader.read(results));
+                }
             }
         } catch (SQLException e) {
+            System.out.println("Unable to read a page of notes for: " + query);
             e.printStackTrace();
         }
 
+        Metrics.query("page").recordSince(start);
+        commitQueryEvent(event, "page", query, page, textOf);
+        return page;
+    }
+
+    /**
+     * Queries for a page of summaries of the notes whose title or content match a search string, best match
+     * first. Only the start of each note's content is read.
+     *
+     * Relevance isn't a key a page can start after, so pages are read by offset. Use openSummaryCursor()
+     * to page through notes most recently saved first.
+     * @param query The words to search for. An empty query returns every note
+     * @param offset How many matches to skip
+     * @param limit The most summaries to read
+     * @return
+     */
+    public ArrayList<NoteSummary> getNoteSummaries(String query, int offset, int limit) {
+        ArrayList<NoteSummary> summaries = new ArrayList<>();
+        long start = System.nanoTime();
+        NotesQueryEvent event = new NotesQueryEvent();
+        event.begin();
+
+        String match = toMatchExpression(query);
+
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            PreparedStatement statement;
+
+            if(searchIndexAvailable && match != null) {
+                statement = reader.prepare(SQL_SEARCH_SUMMARIES);
+                statement.setString(1, match);
+            } else {
+                statement = reader.prepare(SQL_GET_SUMMARIES_BY_TITLE);
+                statement.setString(1, "%" + query.trim() + "%");
+            }
+
+            statement.setInt(2, limit);
+            statement.setInt(3, offset);
+
+            try (ResultSet results = statement.executeQuery()) {
+                //an interrupted query is being cancelled, so stop reading rows nobody will use
+                while(results.next() && !Thread.currentThread().isInterrupted()) {
+                    summaries.add(getSummaryFromResultSet(results));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Unable to read summaries of notes for: " + query);
+            e.printStackTrace();
+        }
+
+        Metrics.query("summaries").recordSince(start);
+        commitQueryEvent(event, "summaries", query, summaries, NoteSummary::getSnippet);
+        return summaries;
+    }
+
+    /**
+     * Ranked full-text search over note titles and content. Every word in the query must appear in the
+     * note, and each word also matches longer words it is the start of, so results show up while typing.
+     * @param query The words to search for
+     * @param limit The most results to return
+     * @return The matches, best first. Empty if the query has no words or the search index is unavailable
+     */
+    public ArrayList<SearchResult> searchNotes(String query, int limit) {
+        ArrayList<SearchResult> results = new ArrayList<>();
+
+        String match = toMatchExpression(query);
+        if(!searchIndexAvailable || match == null)
+            return results;
+
+        long start = System.nanoTime();
+        NotesQueryEvent event = new NotesQueryEvent();
+        event.begin();
+
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            PreparedStatement statement = reader.prepare(SQL_SEARCH_NOTES);
+            statement.setString(1, match);
+            statement.setInt(2, limit);
+
+            try (ResultSet set = statement.executeQuery()) {
+                while(set.next() && !Thread.currentThread().isInterrupted()) {
+                    results.add(new SearchResult(getNoteFromResultSet(set), set.getString("snippet"), set.getDouble("rank")));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("Unable to search notes for: " + query);
+            e.printStackTrace();
+        }
+
+        Metrics.query("search").recordSince(start);
+        commitQueryEvent(event, "search", query, results, result -> result.note.getText());
+        return results;
+    }
+
+    /**
+     * Turns what the user typed into an FTS5 match expression: each word is quoted, so punctuation
+     * can't be read as query syntax, and made a prefix query.
+     * @param query
+     * @return The expression, or null if the query has no words in it
+     */
+    private static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+
+        for(String word : query.split("\\s+")) {
+            word = word.replace("\"", "");
+
+            if(word.isEmpty())
+                continue;
+
+            if(match.length() > 0)
+                match.append(' ');
+
+            match.append('"').append(word).append("\"*");
+        }
+
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    /**
+     * Checks a note against a search string the way a search of the database would, for notes that
+     * changed after the search was run. With the search index, each word has to start a word of the
+     * title or the text, in the same column, the way toMatchExpression() asks FTS5 for it. Without it,
+     * the title has to contain the search string.
+     * @param title
+     * @param text
+     * @param query
+     * @return
+     */
+    public boolean matchesSearch(String title, String text, String query) {
+        if(toMatchExpression(query) == null)
+            return true;
+
+        if(!searchIndexAvailable)
+            return title.toLowerCase().contains(query.trim().toLowerCase());
+
+        List<String> titleTokens = searchTokens(title);
+        List<String> textTokens = searchTokens(text);
+
+        for(String word : query.split("\\s+")) {
+            List<String> phrase = searchTokens(word);
+
+            if(!phrase.isEmpty() && !containsPhrase(titleTokens, phrase) && !containsPhrase(textTokens, phrase))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Splits text into words the way the search index's unicode61 tokenizer does: runs of letters and
+     * digits, lower cased, with accents taken off
+     * @param text
+     * @return
+     */
+    private static List<String> searchTokens(String text) {
+        String folded = SEARCH_DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        ArrayList<String> tokens = new ArrayList<>();
+
+        for(String token : SEARCH_SEPARATORS.split(folded.toLowerCase(Locale.ROOT))) {
+            if(!token.isEmpty())
+                tokens.add(token);
+        }
+
+        return tokens;
+    }
+
+    /**
+     * @param tokens The words of a title or text
+     * @param phrase The words of one quoted search word. The last one only has to be the start of a word
+     * @return Whether the phrase appears in the words, in order and next to each other
+     */
+    private static boolean containsPhrase(List<String> tokens, List<String> phrase) {
+        int last = phrase.size() - 1;
+
+        for(int start = 0; start + last < tokens.size(); start++) {
+            boolean matches = tokens.get(start + last).startsWith(phrase.get(last));
+
+            for(int i = 0; matches && i < last; i++)
+                matches = tokens.get(start + i).equals(phrase.get(i));
+
+            if(matches)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Fills in and commits a query's flight recorder event, if it is being recorded
+     * @param event An event begun before the query ran
+     * @param kind
+     * @param query
+     * @param rows What the query returned
+     * @param textOf The text of one of the rows
+     */
+    private static <T> void commitQueryEvent(NotesQueryEvent event, String kind, String query, List<T> rows, Function<T, String> textOf) {
+        event.end();
+
+        if(!event.shouldCommit())
+            return;
+
+        event.kind = kind;
+        event.query = query;
+        event.rows = rows.size();
+
+        for(T row : rows)
+            event.textBytes += EventSizes.utf8Length(textOf.apply(row));
+
+        event.commit();
+    }
+
+    public ArrayList<Note> getOpenNotes() {
+        ArrayList<Note> openNotes = new ArrayList<>();
+        long start = System.nanoTime();
+        NotesQueryEvent event = new NotesQueryEvent();
+        event.begin();
+
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            PreparedStatement statement = reader.prepare(SQL_GET_OPEN_NOTES);
+
+            try (ResultSet set = statement.executeQuery()) {
+                while(set.next()) {
+                    Note note = getNoteFromResultSet(set);
+                    openNotes.add(note);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        Metrics.query("openNotes").recordSince(start);
+        commitQueryEvent(event, "openNotes", "", openNotes, Note::getText);
+
         System.out.println("Open Notes result set size: " + openNotes.size());
         return openNotes;
     }
 
     /**
-     * Returns a note object from a result set that contains all columns of the note table
+     * Reads a summary from a row of a summary query. A note that is already live is summarized from
+     * the note itself, so edits that haven't been saved yet show up too.
+     * @param results
+     * @return
+     */
+    private NoteSummary getSummaryFromResultSet(ResultSet results) throws SQLException {
+        long id = results.getLong(COLUMN_ID);
+
+        Note live = cache.get(id);
+        if(live != null) {
+            Metrics.ROWS_LIVE.increment();
+            return NoteSummary.of(live);
+        }
+
+        Metrics.ROWS_DECODED.increment();
+
+        return new NoteSummary(id,
+                results.getString(COLUMN_TITLE),
+                results.getString(COLUMN_SNIPPET),
+                results.getLong(COLUMN_DATE_SAVED),
+                NoteColors.unpack(results.getInt(COLUMN_COLOR)));
+    }
+
+    /**
+     * Returns a note object from a result set that contains all columns of the note table.
+     * If the note is already live, that instance is returned and the rest of the row is not read:
+     * the live note may have edits that have not been saved yet.
      *
      * @param results
      * @return
      */
-    private Note getNoteFromResultSet(ResultSet results) {
+    Note getNoteFromResultSet(ResultSet results) {
         Note note = null;
 
         try {
-             note = new Note(results.getLong(COLUMN_ID),
-                    results.getString(COLUMN_TITLE),
-                    results.getString(COLUMN_CONTENT),
-                    new Date(results.getDate(COLUMN_DATE_SAVED).getTime()));
+            note = cache.get(results.getLong(COLUMN_ID));
+            if(note != null) {
+                Metrics.ROWS_LIVE.increment();
+                return note;
+            }
 
-            try {
-                //color is 3 decimals between 0 and 1 all separated by a comma-- so an array of 3 components: R, G, and B!
-                String colorStr[] = results.getString(COLUMN_COLOR).split(",");
+            Metrics.ROWS_DECODED.increment();
 
-                //parse each of the 3 strings representing an RGB value
-                float r = Float.parseFloat(colorStr[0]);
-                float g = Float.parseFloat(colorStr[1]);
-                float b = Float.parseFloat(colorStr[2]);
+            Date dateSaved = new Date(results.getLong(COLUMN_DATE_SAVED));
 
-                //alpha is always 1. Our notes are not transparent!
-                float a = 1.0f;
+            note = new Note(results.getLong(COLUMN_ID),
+                    results.getString(COLUMN_TITLE),
+                    results.getString(COLUMN_CONTENT),
+                    dateSaved);
 
-                note.setColor(new Color(r,g,b,a)); //1.0 at the end is opacity
+            note.setColor(NoteColors.unpack(results.getInt(COLUMN_COLOR)));
+            note.setOpen(results.getInt(COLUMN_OPEN) != 0);
 
-            } catch (NumberFormatException e) {
-                e.printStackTrace();
-            } catch(IllegalArgumentException ex) {
-                note.setColor(NoteColors.DEFAULT_COLOR.getColor());
-            }
+            //setting the color counts as an edit and stamps the note with the current time,
+            //so put back the time it was really saved
+            note.setDateSaved(dateSaved);
+
+            //another thread may have read the same note in the meantime
+            note = cache.putIfAbsent(note);
         } catch (SQLException e) {
             e.printStackTrace();
         } finally {
@@ -364,35 +1196,44 @@ public class Database {
         }
     }
 
-    private long getNextID() throws SQLException{
-        long tempID = nextID;
-        incrementNextId();
-        return tempID;
-    }
-
     /**
-     * S
+     * Hands out a run of unused ids. The nextID table is only written when the reserved block runs out,
+     * and then a whole block (or the whole run, if it is bigger) is claimed at once.
+     * @param count How many ids are needed
+     * @return The first id of the run. The rest follow it in order
      */
-    private void incrementNextId() throws SQLException{
-        nextID++;
+    private synchronized long reserveIds(int count) throws SQLException {
+        if(nextID + count > reservedID) {
+            long newReservedID = nextID + Math.max(count, idBlockSize);
 
-        Statement statement = connection.createStatement();
+            preparedReserveIdsStatement.setLong(1, newReservedID);
+            preparedReserveIdsStatement.executeUpdate();
 
-        String updateNextID = " UPDATE " + TABLE_NEXT_ID +
-                " SET " + COLUMN_NEXT_ID + " = " + nextID + " " +
-                " WHERE " + COLUMN_NEXT_ID + " = " + (nextID - 1);
+            reservedID = newReservedID;
+            System.out.println("Reserved note ids up to: " + reservedID);
+        }
 
-        statement.executeUpdate(updateNextID);
-        statement.close();
+        long firstId = nextID;
+        nextID += count;
 
-        System.out.println("Next ID updated to: " + nextID);
+        return firstId;
     }
 
     /**
      * Closes the connection to the database
      */
-    public void close() {
+    public synchronized void close() {
         try {
+            if(migrations != null)
+                migrations.stop();
+
+            if(readers != null)
+                readers.close();
+
+            //commits were never synced, so sync everything before going
+            if(durability == Durability.RELAXED)
+                syncToDisk();
+
             connection.close();
             System.out.println("Closing database.");
         } catch (SQLException e) {
@@ -401,42 +1242,421 @@ public class Database {
     }
 
     /**
-     * Updates a note in the database
+     * Copies the write-ahead log into the database file and syncs it, whatever the synchronous setting
+     */
+    private void syncToDisk() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA synchronous = FULL");
+            statement.execute("PRAGMA wal_checkpoint(FULL)");
+        }
+    }
+
+    /**
+     * Updates a note in the database, and adds a revision to its history if its title or text changed
      * @param note
      */
-    public void updateNote(Note note) {
-        try {
-            //Date now = new Date();
+    public synchronized void updateNote(Note note) {
+        long start = System.nanoTime();
+        NoteSaveEvent event = new NoteSaveEvent();
+        event.begin();
 
-            Color color = note.getColor();
+        boolean saved = false;
+        boolean[] found = new boolean[1];
 
-            preparedNoteUpdateStatement.setString(1, note.getTitle());
-            preparedNoteUpdateStatement.setString(2, note.getText());
-            preparedNoteUpdateStatement.setDate(3, new java.sql.Date(note.getDateSaved().getTime()));
-            //TODO: Implement checking if the note is open
-            preparedNoteUpdateStatement.setBoolean(4, note.isOpen());
-            preparedNoteUpdateStatement.setString(5, color.getRed() + "," + color.getGreen() + "," + color.getBlue());
+        try {
+            NoteSnapshot snapshot = NoteSnapshot.of(note);
 
-            preparedNoteUpdateStatement.setLong(6, note.id);
-            
-            preparedNoteUpdateStatement.execute();
+            runInTransaction(() -> {
+                recordRevision(snapshot);
+                bindNoteUpdate(snapshot);
 
-            //note.setDateSaved(now);
+                found[0] = preparedNoteUpdateStatement.executeUpdate() > 0;
+            });
 
+            Metrics.query("update").recordSince(start);
+            saved = true;
         } catch (SQLException ex) {
             System.out.println("Unable to use prepared statement on note with id: " + note.id);
             ex.printStackTrace();
         }
+
+        event.end();
+        commitSaveEvent(event, note.id, note.getTitle(), note.getText(), saved);
+
+        //a note that was deleted has no row, so there is nothing for listeners to show
+        if(saved && found[0])
+            notifyListeners(DatabaseChange.updated(Collections.singletonList(note)));
+    }
+
+    /**
+     * Fills in and commits a note save's flight recorder event, if it is being recorded
+     * @param event An event that was begun and ended around the note's write
+     * @param id
+     * @param title
+     * @param text
+     * @param saved
+     */
+    private static void commitSaveEvent(NoteSaveEvent event, long id, String title, String text, boolean saved) {
+        if(!event.shouldCommit())
+            return;
+
+        event.noteId = id;
+        event.titleBytes = EventSizes.utf8Length(title);
+        event.textBytes = EventSizes.utf8Length(text);
+        event.succeeded = saved;
+        event.commit();
+    }
+
+    /**
+     * Updates a group of notes in a single transaction, so the whole group costs one commit. Call it on the
+     * thread that changes the notes
+     * @param notes
+     * @return Whether the notes were written
+     */
+    public boolean updateNotes(Collection<Note> notes) {
+        ArrayList<NoteSnapshot> snapshots = new ArrayList<>(notes.size());
+
+        for(Note note : notes)
+            snapshots.add(NoteSnapshot.of(note));
+
+        return saveSnapshots(snapshots);
+    }
+
+    /**
+     * Writes a group of snapshots in a single transaction. Safe to call on any thread, since nothing is read
+     * from the notes themselves
+     * @param snapshots
+     * @return Whether the snapshots were written
+     */
+    public boolean saveSnapshots(Collection<NoteSnapshot> snapshots) {
+        if(snapshots.isEmpty())
+            return true;
+
+        //one per note, in the same order as snapshots. Each times its own note, and the batch's commit
+        //shows up in the saver's flush event instead
+        ArrayList<NoteSaveEvent> events = new ArrayList<>(snapshots.size());
+        //the notes whose row was actually there to update. A note deleted while its save was waiting matches no row
+        ArrayList<Note> updated = new ArrayList<>(snapshots.size());
+        boolean saved = false;
+
+        try {
+            runInTransaction(() -> {
+                for(NoteSnapshot snapshot : snapshots) {
+                    NoteSaveEvent event = new NoteSaveEvent();
+                    event.begin();
+
+                    recordRevision(snapshot);
+                    bindNoteUpdate(snapshot);
+                    preparedNoteUpdateStatement.addBatch();
+
+                    event.end();
+                    events.add(event);
+                }
+
+                int[] counts = preparedNoteUpdateStatement.executeBatch();
+
+                Iterator<NoteSnapshot> batched = snapshots.iterator();
+                for(int count : counts) {
+                    NoteSnapshot snapshot = batched.next();
+
+                    if(count > 0)
+                        updated.add(snapshot.note);
+                }
+            });
+
+            saved = true;
+        } catch (SQLException ex) {
+            System.out.println("Unable to update a batch of " + snapshots.size() + " notes");
+            ex.printStackTrace();
+        }
+
+        Iterator<NoteSnapshot> written = snapshots.iterator();
+        for(NoteSaveEvent event : events) {
+            NoteSnapshot snapshot = written.next();
+            commitSaveEvent(event, snapshot.id, snapshot.title, snapshot.text, saved);
+        }
+
+        if(!saved)
+            return false;
+
+        if(!updated.isEmpty())
+            notifyListeners(DatabaseChange.updated(updated));
+
+        return true;
+    }
+
+    /**
+     * Fills in preparedNoteUpdateStatement's parameters with a note's values
+     * @param snapshot
+     */
+    private void bindNoteUpdate(NoteSnapshot snapshot) throws SQLException {
+        preparedNoteUpdateStatement.setString(1, snapshot.title);
+        preparedNoteUpdateStatement.setString(2, snapshot.text);
+        preparedNoteUpdateStatement.setLong(3, snapshot.dateSaved);
+        preparedNoteUpdateStatement.setInt(4, snapshot.open ? 1 : 0);
+        preparedNoteUpdateStatement.setInt(5, snapshot.color);
+
+        preparedNoteUpdateStatement.setLong(6, snapshot.id);
+    }
+
+    /**
+     * Adds a revision for a note that is about to be updated, comparing it to the version that is in the database.
+     * Must run in the same transaction as the update
+     * @param snapshot
+     */
+    private void recordRevision(NoteSnapshot snapshot) throws SQLException {
+        preparedSavedVersionStatement.setLong(1, snapshot.id);
+
+        try (ResultSet saved = preparedSavedVersionStatement.executeQuery()) {
+            if(saved.next())
+                revisions.record(snapshot.id,
+                        saved.getString(COLUMN_TITLE), saved.getString(COLUMN_CONTENT), saved.getLong(COLUMN_DATE_SAVED),
+                        snapshot.title, snapshot.text, snapshot.dateSaved);
+        }
     }
 
+    /**
+     * Deletes a note along with its history
+     * @param note
+     */
     public void deleteNote(Note note) {
+        deleteNotes(new long[] { note.id });
+    }
+
+    /**
+     * Deletes a group of notes in a single transaction
+     * @param notes
+     */
+    public void deleteNotes(Collection<Note> notes) {
+        long[] ids = new long[notes.size()];
+        int i = 0;
+
+        for(Note note : notes)
+            ids[i++] = note.id;
+
+        deleteNotes(ids);
+    }
+
+    /**
+     * Deletes a group of notes by id in a single transaction
+     * @param ids
+     */
+    public void deleteNotes(long[] ids) {
+        if(ids.length == 0)
+            return;
+
         try {
-            preparedDeleteNoteStatement.setLong(1, note.id);
+            runInTransaction(() -> {
+                for(long id : ids) {
+                    preparedDeleteNoteStatement.setLong(1, id);
+                    preparedDeleteNoteStatement.addBatch();
+                }
+
+                preparedDeleteNoteStatement.executeBatch();
 
-            preparedDeleteNoteStatement.execute();
+                revisions.deleteHistory(ids);
+            });
 
+            for(long id : ids)
+                cache.remove(id);
+
+            notifyListeners(DatabaseChange.deleted(ids));
         } catch(SQLException ex) {
+            System.out.println("Unable to delete a batch of " + ids.length + " notes");
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Forgets every live note, so the next reads build them from their rows again
+     */
+    void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * @param id
+     * @return The note if it is live, or null. Never reads the database, so it is safe on the JavaFX thread
+     */
+    public Note getLiveNote(long id) {
+        return cache.get(id);
+    }
+
+    /**
+     * Makes a note that was built outside the database, such as from the startup snapshot, the one live
+     * instance for its id. Any instance read before it is dropped
+     * @param note
+     */
+    public void adoptNote(Note note) {
+        cache.remove(note.id);
+        cache.putIfAbsent(note);
+    }
+
+    /**
+     * Lists a note's revisions, newest first
+     * @param noteId
+     * @return
+     */
+    public ArrayList<Revision> getRevisions(long noteId) {
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            return RevisionStore.list(reader, noteId);
+        } catch (SQLException ex) {
+            System.out.println("Unable to read the history of note " + noteId);
+            ex.printStackTrace();
+        }
 
+        return new ArrayList<>();
+    }
+
+    /**
+     * @param noteId
+     * @param number
+     * @return The text of one of a note's revisions, or null if it has no such revision
+     */
+    public String getRevisionContent(long noteId, int number) {
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            return RevisionStore.readText(reader, noteId, number);
+        } catch (SQLException ex) {
+            System.out.println("Unable to read revision " + number + " of note " + noteId);
+            ex.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Puts a note's title and text back to one of its revisions. The restore is saved right away, as a new
+     * revision, so it can be undone by restoring the revision before it. This reads and writes the database, so
+     * call it through AsyncDatabase rather than on the JavaFX thread. The live note isn't touched here: listeners
+     * hear a RESTORED change holding the restored state, and put it in the note on the JavaFX thread.
+     * @param noteId
+     * @param number
+     * @return A copy of the note as restored, or null if it has no such revision
+     */
+    public Note restoreRevision(long noteId, int number) {
+        Revision revision = null;
+        String text = null;
+
+        try (ReadConnectionPool.Reader reader = readers.borrow()) {
+            revision = RevisionStore.find(reader, noteId, number);
+            text = RevisionStore.readText(reader, noteId, number);
+        } catch (SQLException ex) {
+            ex.printStackTrace();
+        }
+
+        if(revision == null || text == null) {
+            System.out.println("Note " + noteId + " has no revision " + number);
+            return null;
+        }
+
+        String title = revision.title;
+        String restoredText = text;
+        Date dateSaved = new Date();
+        Note[] restored = new Note[1];
+
+        //the restore is saved now, so whatever edits were waiting to be saved are dropped
+        NoteSaveExecutor.getInstance().removeNote(noteId);
+
+        try {
+            runInTransaction(() -> {
+                preparedSavedVersionStatement.setLong(1, noteId);
+
+                try (ResultSet saved = preparedSavedVersionStatement.executeQuery()) {
+                    //deleted since the revision was read
+                    if(!saved.next())
+                        return;
+
+                    revisions.record(noteId,
+                            saved.getString(COLUMN_TITLE), saved.getString(COLUMN_CONTENT), saved.getLong(COLUMN_DATE_SAVED),
+                            title, restoredText, dateSaved.getTime());
+
+                    //the rest of the note is written back as it was saved
+                    Note note = new Note(noteId, title, restoredText, dateSaved);
+                    note.setColor(NoteColors.unpack(saved.getInt(COLUMN_COLOR)));
+                    note.setOpen(saved.getInt(COLUMN_OPEN) != 0);
+                    note.setDateSaved(dateSaved);
+
+                    restored[0] = note;
+                }
+
+                bindNoteUpdate(NoteSnapshot.of(restored[0]));
+                preparedNoteUpdateStatement.executeUpdate();
+            });
+        } catch (SQLException ex) {
+            System.out.println("Unable to restore revision " + number + " of note " + noteId);
+            ex.printStackTrace();
+            return null;
+        }
+
+        if(restored[0] == null) {
+            System.out.println("Note " + noteId + " was deleted before revision " + number + " could be restored");
+            return null;
+        }
+
+        notifyListeners(DatabaseChange.restored(Collections.singletonList(restored[0])));
+
+        return restored[0];
+    }
+
+    public void addListener(DatabaseListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DatabaseListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tells every listener about a change that was just committed
+     * @param change
+     */
+    private void notifyListeners(DatabaseChange change) {
+        for(DatabaseListener listener : listeners)
+            listener.databaseChanged(change);
+    }
+
+    /**
+     * Runs a unit of work as one transaction: either all of its statements are committed, or
+     * none of them are.
+     * @param work
+     * @throws SQLException The exception that caused the rollback
+     */
+    synchronized void runInTransaction(SQLWork work) throws SQLException {
+        connection.setAutoCommit(false);
+
+        try {
+            work.run();
+            connection.commit();
+        } catch (SQLException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(true);
         }
     }
+
+    /**
+     * For any class that needs to know when notes are inserted, updated or deleted
+     */
+    public interface DatabaseListener {
+        /**
+         * Called after a change is committed, on whichever thread made the change
+         * @param change
+         */
+        void databaseChanged(DatabaseChange change);
+    }
+
+    /**
+     * Turns the current row of a result set into an object
+     */
+    private interface RowReader<T> {
+        T read(ResultSet results) throws SQLException;
+    }
+
+    /**
+     * A unit of database work that is run inside a transaction
+     */
+    interface SQLWork {
+        void run() throws SQLException;
+    }
 }
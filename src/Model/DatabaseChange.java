@@ -0,0 +1,84 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a change that was committed to the notes table, so listeners can update what they show
+ * without re-querying everything
+ */
+public class DatabaseChange {
+
+    public enum Type {
+        INSERTED,
+        UPDATED,
+        DELETED,
+
+        /**
+         * Notes were put back to an earlier revision and saved, outside of their windows. Their live notes
+         * still hold what they had before, so whatever shows them puts the restored state in on the JavaFX thread
+         */
+        RESTORED
+    }
+
+    /**
+     * What happened to the notes
+     */
+    public final Type type;
+
+    /**
+     * The ids of every note that changed
+     */
+    public final long[] ids;
+
+    /**
+     * The notes that were inserted, updated or restored, in the same order as ids. Empty for deletions.
+     * Restored notes are copies holding the state that was saved, not the live notes
+     */
+    public final List<Note> notes;
+
+    private DatabaseChange(Type type, long[] ids, List<Note> notes) {
+        this.type = type;
+        this.ids = ids;
+        this.notes = notes;
+    }
+
+    static DatabaseChange inserted(Collection<Note> notes) {
+        return written(Type.INSERTED, notes);
+    }
+
+    static DatabaseChange updated(Collection<Note> notes) {
+        return written(Type.UPDATED, notes);
+    }
+
+    static DatabaseChange restored(Collection<Note> notes) {
+        return written(Type.RESTORED, notes);
+    }
+
+    static DatabaseChange deleted(long[] ids) {
+        return new DatabaseChange(Type.DELETED, ids.clone(), Collections.emptyList());
+    }
+
+    /**
+     * Creates a change for notes that were written
+     * @param type
+     * @param notes
+     * @return
+     */
+    private static DatabaseChange written(Type type, Collection<Note> notes) {
+        List<Note> written = Collections.unmodifiableList(new ArrayList<>(notes));
+
+        return new DatabaseChange(type, idsOf(written), written);
+    }
+
+    private static long[] idsOf(List<Note> notes) {
+        long[] ids = new long[notes.size()];
+
+        for(int i = 0; i < ids.length; i++)
+            ids[i] = notes.get(i).id;
+
+        return ids;
+    }
+}
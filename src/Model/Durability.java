@@ -0,0 +1,61 @@
+package Model;
+
+import org.sqlite.SQLiteConfig;
+
+import java.util.Locale;
+
+/**
+ * How hard Jot works to get each save onto the disk, traded against how many times it waits for the disk
+ * to sync. Chosen per install with the jot.save.durability setting.
+ */
+public enum Durability {
+
+    /**
+     * Every save is committed on its own as soon as it is queued, and synced before the commit returns.
+     * Journaled edits are synced by the saver thread right before they are committed
+     */
+    STRICT(SQLiteConfig.SynchronousMode.FULL),
+
+    /**
+     * Saves are gathered for the flush delay and committed together, with one sync per group. A crash can lose
+     * at most the last flush delay's edits, or none of them with the edit journal turned on
+     */
+    GROUP(SQLiteConfig.SynchronousMode.FULL),
+
+    /**
+     * Saves are grouped like GROUP, but commits are left to the operating system to write out whenever it likes.
+     * Jot itself dying loses nothing written, but the machine losing power can lose whatever the operating
+     * system hadn't written yet. The database is synced when Jot exits
+     */
+    RELAXED(SQLiteConfig.SynchronousMode.OFF);
+
+    /**
+     * Setting for the durability mode: strict, group or relaxed
+     */
+    public static final String SETTING = "jot.save.durability";
+
+    public static final Durability DEFAULT = GROUP;
+
+    /**
+     * What SQLite's synchronous pragma is set to on the write connection
+     */
+    public final SQLiteConfig.SynchronousMode synchronousMode;
+
+    Durability(SQLiteConfig.SynchronousMode synchronousMode) {
+        this.synchronousMode = synchronousMode;
+    }
+
+    /**
+     * @return The durability this install is set up with
+     */
+    public static Durability fromSettings() {
+        String value = Settings.getInstance().getString(SETTING, DEFAULT.name());
+
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid value for setting " + SETTING + ", using " + DEFAULT.name().toLowerCase(Locale.ROOT));
+            return DEFAULT;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package Model;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One step in the notes database's schema history. The database's PRAGMA user_version records the last
+ * step that was applied.
+ *
+ * A step has two parts: migrate() makes the quick schema changes at startup, and runBatch() does any heavy
+ * data rewriting afterwards, a batch at a time on a background thread. The rewrite must keep its progress in
+ * the database itself, so a rewrite that was cut short by the application closing picks up where it left off.
+ */
+abstract class Migration {
+
+    /**
+     * The schema version the database is at once this step has run. Versions start at 1 and go up by one
+     */
+    final int version;
+
+    /**
+     * What this step changes, for the log
+     */
+    final String description;
+
+    Migration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+
+    /**
+     * Makes the schema changes. Runs in a transaction at startup before the database is used, so it should
+     * only touch a handful of rows
+     * @param connection
+     */
+    abstract void migrate(Connection connection) throws SQLException;
+
+    /**
+     * Checked every time the database is opened, not just when this step is applied
+     * @param connection
+     * @return Whether there is data left for runBatch() to rewrite
+     */
+    boolean hasBackgroundWork(Connection connection) throws SQLException {
+        return false;
+    }
+
+    /**
+     * Rewrites the next batch of data. Each batch runs in its own transaction, holding the database's write lock
+     * @param connection
+     * @param batchSize Roughly how many rows to rewrite
+     * @return Whether there is more work after this batch
+     */
+    boolean runBatch(Connection connection, int batchSize) throws SQLException {
+        return false;
+    }
+}
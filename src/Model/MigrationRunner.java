@@ -0,0 +1,161 @@
+package Model;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Brings the notes database up to the current schema. The schema changes of every step the database has not
+ * seen yet are applied in order at startup, then the heavy data rewrites they leave behind run in small
+ * batches on a background thread, so the application is usable while a large database is upgraded.
+ */
+class MigrationRunner {
+
+    /**
+     * Setting for how many rows a background rewrite handles per transaction
+     */
+    public static final String SETTING_BATCH_SIZE = "jot.migration.batchSize";
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * Time between batches, so saves from the application get the write lock in between
+     */
+    private static final long BATCH_PAUSE = 20;
+
+    /**
+     * Every step of the schema's history, oldest first
+     */
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new TypedNotesMigration(),
+            new RevisionHistoryMigration()
+    );
+
+    private final Database database;
+
+    /**
+     * The database's write connection. Only used while holding the database's lock
+     */
+    private final Connection connection;
+
+    private final int batchSize = Math.max(1, Settings.getInstance().getInt(SETTING_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+
+    /**
+     * Set when the database closes, so the background rewrites stop
+     */
+    private volatile boolean stopped = false;
+
+    MigrationRunner(Database database, Connection connection) {
+        this.database = database;
+        this.connection = connection;
+    }
+
+    /**
+     * @return The schema version the newest step brings the database to
+     */
+    static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * @return The schema version the database is at. 0 for a database from before versioning
+     */
+    int getVersion() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    private void setVersion(int version) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("PRAGMA user_version = " + version);
+        }
+    }
+
+    /**
+     * Marks a database whose tables were just created as being at the latest version
+     */
+    void markCurrent() throws SQLException {
+        setVersion(getLatestVersion());
+    }
+
+    /**
+     * Applies the schema changes of every step the database has not seen yet, each in its own transaction
+     */
+    void migrate() throws SQLException {
+        int version = getVersion();
+
+        for(Migration migration : MIGRATIONS) {
+            if(migration.version <= version)
+                continue;
+
+            System.out.println("Migrating database to version " + migration.version + ": " + migration.description);
+
+            database.runInTransaction(() -> {
+                migration.migrate(connection);
+                setVersion(migration.version);
+            });
+        }
+    }
+
+    /**
+     * Starts a background thread for the data rewrites that are still left, if there are any
+     */
+    void startBackgroundWork() throws SQLException {
+        ArrayList<Migration> pending = new ArrayList<>();
+
+        for(Migration migration : MIGRATIONS) {
+            if(migration.hasBackgroundWork(connection))
+                pending.add(migration);
+        }
+
+        if(pending.isEmpty())
+            return;
+
+        Thread worker = new Thread(() -> runBackgroundWork(pending), "Jot database migration");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Runs each rewrite a batch at a time until it is done or the database closes
+     * @param pending
+     */
+    private void runBackgroundWork(List<Migration> pending) {
+        for(Migration migration : pending) {
+            boolean[] more = { true };
+
+            try {
+                while(more[0] && !stopped) {
+                    database.runInTransaction(() -> more[0] = migration.runBatch(connection, batchSize));
+                    Thread.sleep(BATCH_PAUSE);
+                }
+            } catch(SQLException ex) {
+                //the batch was rolled back, so it is simply run again next time
+                if(!stopped) {
+                    System.out.println("Migration to version " + migration.version + " stopped. It will carry on next time.");
+                    ex.printStackTrace();
+                }
+                return;
+            } catch(InterruptedException ex) {
+                return;
+            }
+
+            if(!more[0])
+                System.out.println("Finished migrating database to version " + migration.version);
+        }
+    }
+
+    /**
+     * Stops the background rewrites after the batch that is running
+     */
+    void stop() {
+        stopped = true;
+    }
+}
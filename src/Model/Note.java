@@ -209,6 +209,26 @@ public class Note {
         }
     }
 
+    /**
+     * Takes on another copy of this note's saved state without counting it as an edit, so no listeners hear about it
+     * @param other
+     */
+    void copyFrom(Note other) {
+        this.title = other.title;
+        this.text = other.text;
+        this.color = other.color;
+        this.open = other.open;
+        this.dateSaved = other.dateSaved;
+    }
+
+    /**
+     * Matches equals(): notes with the same ID hash the same
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
     /**
      * For any class that needs to listen to changes in my text or title
      */
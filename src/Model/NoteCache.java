@@ -0,0 +1,145 @@
+package Model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The identity map of every note the database has handed out, keyed by id. As long as anything still uses
+ * a note (an open window, the notes list, a search result), reading its row again returns that same instance,
+ * so there is only ever one live Note per id and edits made to it are seen everywhere.
+ *
+ * The most recently used notes are also kept strongly in a bounded LRU list, so notes that come and go
+ * from the screen are not rebuilt from their rows every time they are queried.
+ */
+public class NoteCache {
+
+    /**
+     * Setting for how many recently used notes are kept even when nothing else uses them
+     */
+    public static final String SETTING_CAPACITY = "jot.cache.capacity";
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * Every note that is still reachable, by id. The entries go away on their own once a note is collected
+     */
+    private final HashMap<Long, NoteReference> liveNotes = new HashMap<>();
+
+    /**
+     * Where the garbage collector puts references to notes it has collected
+     */
+    private final ReferenceQueue<Note> collectedNotes = new ReferenceQueue<>();
+
+    /**
+     * The recently used notes, least recently used first
+     */
+    private final LinkedHashMap<Long, Note> recentNotes;
+
+    public NoteCache() {
+        this(Settings.getInstance().getInt(SETTING_CAPACITY, DEFAULT_CAPACITY));
+    }
+
+    /**
+     * @param capacity How many recently used notes are kept even when nothing else uses them
+     */
+    public NoteCache(int capacity) {
+        final int maxRecent = Math.max(0, capacity);
+
+        recentNotes = new LinkedHashMap<Long, Note>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Note> eldest) {
+                return size() > maxRecent;
+            }
+        };
+    }
+
+    /**
+     * @param id
+     * @return The live note with this id, or null if there isn't one
+     */
+    public synchronized Note get(long id) {
+        expungeCollectedNotes();
+
+        Note note = recentNotes.get(id);
+        if(note != null)
+            return note;
+
+        NoteReference reference = liveNotes.get(id);
+        note = reference == null ? null : reference.get();
+
+        //it is in use again, so it counts as recent
+        if(note != null)
+            recentNotes.put(id, note);
+
+        return note;
+    }
+
+    /**
+     * Adds a note, unless another instance with its id is already live
+     * @param note
+     * @return The note every caller should use for this id: the one already live, or the one passed in
+     */
+    public synchronized Note putIfAbsent(Note note) {
+        Note existing = get(note.id);
+        if(existing != null)
+            return existing;
+
+        liveNotes.put(note.id, new NoteReference(note, collectedNotes));
+        recentNotes.put(note.id, note);
+
+        return note;
+    }
+
+    /**
+     * Forgets a note, for when it is deleted
+     * @param id
+     */
+    public synchronized void remove(long id) {
+        liveNotes.remove(id);
+        recentNotes.remove(id);
+    }
+
+    /**
+     * Forgets every note
+     */
+    public synchronized void clear() {
+        liveNotes.clear();
+        recentNotes.clear();
+    }
+
+    /**
+     * @return How many notes are live
+     */
+    public synchronized int size() {
+        expungeCollectedNotes();
+        return liveNotes.size();
+    }
+
+    /**
+     * Drops the entries of notes that have been garbage collected
+     */
+    private void expungeCollectedNotes() {
+        NoteReference reference;
+
+        while((reference = (NoteReference) collectedNotes.poll()) != null) {
+            //only remove it if the id hasn't been given to a newer note since
+            if(liveNotes.get(reference.id) == reference)
+                liveNotes.remove(reference.id);
+        }
+    }
+
+    /**
+     * A weak reference that remembers the id of its note after the note is gone
+     */
+    private static class NoteReference extends WeakReference<Note> {
+        private final long id;
+
+        NoteReference(Note note, ReferenceQueue<Note> queue) {
+            super(note, queue);
+            this.id = note.id;
+        }
+    }
+}
@@ -20,8 +20,9 @@ public interface NoteControllerHost {
 
     /**
      * Deletes all notes currently selected
+     * @param ids The ids of the notes to delete
      */
-    void deleteAllNotes(ArrayList<Note> notes);
+    void deleteAllNotes(long[] ids);
 
     /**
      * Closes all open notes
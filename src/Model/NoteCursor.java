@@ -0,0 +1,144 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks through the notes matching a query one page at a time, most recently saved first.
+ * Pages are keyed on the (dateSaved, id) of the last note read rather than an offset, so every page is
+ * an index seek no matter how deep into the results it is, and only one page is ever held in memory.
+ *
+ * No connection is held between pages, so a cursor can be dropped at any point without being closed.
+ *
+ * A cursor reads either full notes or NoteSummary rows, depending on what it was opened for.
+ */
+public class NoteCursor<T> implements Iterator<T> {
+
+    /**
+     * Reads the page that comes right after a (dateSaved, id) key
+     */
+    interface PageReader<T> {
+        List<T> readPage(String query, long beforeDateSaved, long beforeId, int limit);
+    }
+
+    private final PageReader<T> reader;
+
+    /**
+     * Pull the key out of the last row of a page
+     */
+    private final ToLongFunction<T> dateSavedOf;
+    private final ToLongFunction<T> idOf;
+
+    /**
+     * The search words notes must match, or an empty string for every note
+     */
+    private final String query;
+
+    /**
+     * How many notes are read from the database at a time
+     */
+    private final int pageSize;
+
+    /**
+     * The page being iterated over by next()
+     */
+    private List<T> page = new ArrayList<>();
+
+    /**
+     * The position of the next note in page
+     */
+    private int pageIndex = 0;
+
+    /**
+     * The key of the last note read. The next page starts right after it
+     */
+    private long lastDateSaved = Long.MAX_VALUE;
+    private long lastId = Long.MAX_VALUE;
+
+    /**
+     * Whether the database has run out of notes for this cursor
+     */
+    private boolean exhausted = false;
+
+    NoteCursor(PageReader<T> reader, ToLongFunction<T> dateSavedOf, ToLongFunction<T> idOf, String query, int pageSize) {
+        this.reader = reader;
+        this.dateSavedOf = dateSavedOf;
+        this.idOf = idOf;
+        this.query = query;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * Reads the next page of notes from the database
+     * @return Up to pageSize notes. Empty once every note has been read
+     */
+    public List<T> nextPage() {
+        //hand out whatever next() had not gotten to yet before reading more
+        if(pageIndex < page.size()) {
+            List<T> rest = new ArrayList<>(page.subList(pageIndex, page.size()));
+            pageIndex = page.size();
+            return rest;
+        }
+
+        if(exhausted)
+            return new ArrayList<>();
+
+        List<T> notes = reader.readPage(query, lastDateSaved, lastId, pageSize);
+
+        if(notes.size() < pageSize)
+            exhausted = true;
+
+        if(!notes.isEmpty()) {
+            T last = notes.get(notes.size() - 1);
+            lastDateSaved = dateSavedOf.applyAsLong(last);
+            lastId = idOf.applyAsLong(last);
+        }
+
+        return notes;
+    }
+
+    /**
+     * @return Whether there might be more notes to read
+     */
+    public boolean hasNextPage() {
+        return pageIndex < page.size() || !exhausted;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(pageIndex < page.size())
+            return true;
+
+        if(exhausted)
+            return false;
+
+        page = nextPage();
+        pageIndex = 0;
+
+        return !page.isEmpty();
+    }
+
+    @Override
+    public T next() {
+        if(!hasNext())
+            throw new NoSuchElementException();
+
+        return page.get(pageIndex++);
+    }
+
+    /**
+     * @return The rest of this cursor's notes as a lazy stream. Pages are only read as the stream pulls them,
+     * so short-circuiting operations like limit() and findFirst() stop reading early
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
@@ -1,10 +1,38 @@
 package Model;
 
+import Model.color.NoteColors;
+import Model.journal.EditJournal;
+import Model.jfr.EventSizes;
+import Model.jfr.SaveFlushEvent;
+import Model.journal.NoteEdit;
+import Model.metrics.Metrics;
+
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.concurrent.Executor;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
+ * Write-behind buffer for note saves. Notes that change are marked dirty by id, and a 2nd thread
+ * writes the latest state of every dirty note once the flush delay passes or too many notes are waiting.
+ * Any number of changes to the same note in between flushes cost a single database write.
+ *
+ * Queuing a note takes a NoteSnapshot of it and puts it in a concurrent map, so the saver thread only ever
+ * sees a consistent, unchanging copy of each note, and queuing never waits on a flush.
+ *
+ * With the edit journal turned on, every change is also appended to the journal as it is queued, so changes
+ * that are still waiting here are replayed at the next startup if the application dies before they are written.
+ *
  * Created by DanDan on 5/16/2016.
  */
 public class NoteSaveExecutor {
@@ -17,51 +45,526 @@ public class NoteSaveExecutor {
         return instance;
     }
 
+    /**
+     * Setting for how many milliseconds a dirty note may wait before it is written
+     */
+    public static final String SETTING_FLUSH_DELAY = "jot.save.flushDelay";
+
+    /**
+     * Setting for how many dirty notes may wait before a flush is forced right away
+     */
+    public static final String SETTING_MAX_PENDING = "jot.save.maxPending";
+
+    /**
+     * Setting for how many milliseconds exiting waits for the last flush before giving up on it
+     */
+    public static final String SETTING_EXIT_TIMEOUT = "jot.save.exitTimeout";
+
+    private static final long DEFAULT_FLUSH_DELAY = 500;
+    private static final int DEFAULT_MAX_PENDING = 32;
+    private static final long DEFAULT_EXIT_TIMEOUT = 5000;
+
     /**
      * The executor that waits to execute saving of notes
      */
-    private final Executor executor = Executors.newFixedThreadPool(1);
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Jot note saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Notes waiting to be saved, keyed by id. Only the latest state of a note is ever written,
+     * so a note shows up here at most once no matter how many times it changed
+     */
+    private final ConcurrentHashMap<Long, PendingSave> notesWaiting = new ConcurrentHashMap<>();
+
+    /**
+     * Whether a flush is scheduled for after the flush delay
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * Whether a flush has been asked for right away, and hasn't started yet
+     */
+    private final AtomicBoolean urgentFlushQueued = new AtomicBoolean();
+
+    /**
+     * How many queueNote() calls are between journaling a change and putting it in notesWaiting. The journal
+     * isn't emptied while any are, since their change is journaled but can't be seen by a flush yet
+     */
+    private final AtomicInteger queuesInProgress = new AtomicInteger();
+
+    /**
+     * Milliseconds between a note becoming dirty and it being written
+     */
+    private volatile long flushDelay;
+
+    /**
+     * Number of dirty notes that forces an immediate flush
+     */
+    private volatile int maxPending;
+
+    /**
+     * The journal queued changes are appended to, or null if it is turned off
+     */
+    private final EditJournal journal;
+
+    /**
+     * How hard saves work to reach the disk. Strict saves are written as soon as they are queued
+     */
+    private final Durability durability = Durability.fromSettings();
+
+    /**
+     * The database notes are written to. Looked up on first use, so the saver can be set up before the database opens
+     */
+    private final Supplier<Database> database;
 
     /**
-     * ArrayList of notes waiting to be saved
+     * Counters for how the buffer is being used
      */
-    private ArrayList<Note> notesWaiting = new ArrayList<>();
+    private final AtomicLong saveRequests = new AtomicLong();
+    private final AtomicLong writesCoalesced = new AtomicLong();
+    private final AtomicLong notesWritten = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
 
     private NoteSaveExecutor(){
+        this(Database::getInstance, openJournal());
+    }
+
+    /**
+     * A saver of its own, apart from the application's, such as for benchmarks
+     * @param database
+     * @param journal The journal to append to, or null for none
+     */
+    NoteSaveExecutor(Supplier<Database> database, EditJournal journal) {
+        //strict saves don't wait to be grouped
+        setFlushDelay(durability == Durability.STRICT ? 0 : Settings.getInstance().getLong(SETTING_FLUSH_DELAY, DEFAULT_FLUSH_DELAY));
+        setMaxPending(Settings.getInstance().getInt(SETTING_MAX_PENDING, DEFAULT_MAX_PENDING));
 
+        this.database = database;
+        this.journal = journal;
     }
 
     /**
-     * If a note is not already queued up, adds it to the queue of notes waiting, and
-     * adds it to the executor's action queue
-     * @param note
+     * @return The edit journal, or null if it is turned off or can't be opened
      */
-    public void queueNote(Note note) {
+    private static EditJournal openJournal() {
+        if(!Settings.getInstance().getBoolean(EditJournal.SETTING_ENABLED, false))
+            return null;
+
+        try {
+            return new EditJournal(Settings.getInstance().getDataDirectory(),
+                    Settings.getInstance().getInt(EditJournal.SETTING_SEGMENT_SIZE, EditJournal.DEFAULT_SEGMENT_SIZE));
+        } catch (IOException e) {
+            System.out.println("Unable to open the edit journal. Saves will only go to the database.");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return Whether the journal holds edits from a run that didn't get to save them
+     */
+    public boolean hasJournaledEdits() {
+        return journal != null && !journal.isEmpty();
+    }
+
+    /**
+     * Writes any edits left in the journal by a run that didn't get to save them. Call it at startup, before
+     * any notes are shown or edited.
+     */
+    public void replayJournal() {
+        if(journal == null)
+            return;
 
-        //make sure the note is not already awaiting completion
-        if(!notesWaiting.contains(note)) {
+        Database database = this.database.get();
+        ArrayList<Note> notes = new ArrayList<>();
 
-            //add the note to our list of notes awaiting completion
-            notesWaiting.add(note);
+        for(NoteEdit edit : journal.readEdits()) {
+            Note note = database.getNote(edit.noteId);
 
-            //the new runnable to be saved
-            executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    //first save the note
-                    Database.getInstance().updateNote(note);
+            //deleted since, or saved again some other way, like a restored revision
+            if(note == null || edit.dateSaved < note.getDateSaved().getTime())
+                continue;
+
+            note.setTitle(edit.title);
+            note.setText(edit.text);
+            note.setColor(NoteColors.unpack(edit.color));
+            note.setOpen(edit.open);
+            note.setDateSaved(new Date(edit.dateSaved));
+
+            notes.add(note);
+        }
 
-                    //after the note is saved, remember to remove it from the notes awaiting completion
-                    notesWaiting.remove(note);
+        //if the write fails the edits stay in the journal for next time
+        if(database.updateNotes(notes)) {
+            journal.reset();
 
-                    //notify me of completion
-                    System.out.println("Executor successfully saved note: " + note.getTitle());
+            if(!notes.isEmpty())
+                System.out.println("Recovered " + notes.size() + " note(s) from the edit journal");
+        }
+    }
+
+    /**
+     * Marks a note as dirty. If the note is already waiting to be saved, this change is folded into
+     * the pending write; otherwise the note is added and a flush is scheduled. Call it on the thread that
+     * changes the note, since this is where its state is copied.
+     * @param note
+     */
+    public void queueNote(Note note) {
+        saveRequests.incrementAndGet();
+
+        NoteSnapshot snapshot = NoteSnapshot.of(note);
+        long journalGeneration = NOT_JOURNALED;
+        boolean journalFull = false;
+
+        queuesInProgress.incrementAndGet();
+        try {
+            //journaled first, so a flush that takes this change can never empty the journal before it is written
+            if(journal != null) {
+                journalGeneration = journal(snapshot);
+
+                //the active segment is full: carry on in the spare one if the saver has emptied it. The saver
+                //empties the full one once the notes it holds are written
+                if(journalGeneration == NOT_JOURNALED) {
+                    journalFull = true;
+                    journal.rollover();
+                    journalGeneration = journal(snapshot);
                 }
+            }
+
+            //a note that was already waiting just gets its latest state written instead
+            notesWaiting.merge(snapshot.id, new PendingSave(snapshot, System.nanoTime(), journalGeneration), (waiting, latest) -> {
+                writesCoalesced.incrementAndGet();
+                return new PendingSave(latest.snapshot, waiting.queuedAt,
+                        latest.journalGeneration != NOT_JOURNALED ? latest.journalGeneration : waiting.journalGeneration);
             });
+        } finally {
+            queuesInProgress.decrementAndGet();
         }
+
+        //too many notes waiting, or a full journal the saver has to drain: don't hold on to them any longer.
+        //A change that still didn't fit in the journal is only safe once this flush writes it
+        if(journalFull || notesWaiting.size() >= maxPending)
+            requestFlush();
+        //otherwise make sure a flush is coming within the flush delay
+        else
+            scheduleFlush();
     }
 
+    /**
+     * Appends a note's state to the journal
+     * @return The generation it was journaled in, or NOT_JOURNALED if the active segment is full
+     */
+    private long journal(NoteSnapshot snapshot) {
+        return journal.append(snapshot.id, snapshot.dateSaved, snapshot.open, snapshot.color, snapshot.title, snapshot.text);
+    }
+
+    /**
+     * Stops a note from being saved, such as when it is deleted before it was written
+     * @param note
+     */
     public void removeNote(Note note) {
-        notesWaiting.remove(note);
+        removeNote(note.id);
+    }
+
+    /**
+     * Stops a note from being saved, by id
+     * @param id
+     */
+    public void removeNote(long id) {
+        notesWaiting.remove(id);
+    }
+
+    /**
+     * Writes every dirty note right away and waits for the write to finish.
+     */
+    public void flushNow() {
+        try {
+            executor.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes every dirty note right away, waiting no longer than a timeout for the write to finish.
+     * Used on exit so no queued changes are lost, without a stuck disk keeping Jot from exiting.
+     * @param timeout How long to wait, in milliseconds. The flush is started even with no time left
+     * @return Whether every note was written in time
+     */
+    public boolean flushBeforeExit(long timeout) {
+        try {
+            executor.submit(this::flush).get(timeout, TimeUnit.MILLISECONDS);
+            return notesWaiting.isEmpty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        } catch (TimeoutException e) {
+            System.out.println("Saving notes took longer than " + timeout + " ms. Exiting without waiting for it.");
+        }
+
+        return false;
+    }
+
+    /**
+     * Stops the saver thread and closes the journal. Call it on exit, once every note has been written
+     */
+    public void close() {
+        executor.shutdown();
+
+        if(journal != null)
+            journal.close();
+    }
+
+    /**
+     * Makes sure a flush is coming within the flush delay
+     */
+    private void scheduleFlush() {
+        if(flushScheduled.compareAndSet(false, true))
+            executor.schedule(this::scheduledFlush, flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts a flush as soon as the saver thread is free. The scheduled flush still runs, and finds less to do
+     */
+    private void requestFlush() {
+        if(urgentFlushQueued.compareAndSet(false, true))
+            executor.execute(this::flush);
+    }
+
+    private void scheduledFlush() {
+        flushScheduled.set(false);
+        flush();
+    }
+
+    /**
+     * Takes every note waiting to be saved and writes it to the database. Runs on the saver thread.
+     */
+    private void flush() {
+        urgentFlushQueued.set(false);
+
+        if(notesWaiting.isEmpty())
+            return;
+
+        SaveFlushEvent event = new SaveFlushEvent();
+        event.begin();
+
+        //strict saves sync the journal here rather than on the thread that queued them, which is usually the FX
+        //thread. It's done before the write, so the edits are on disk even if the write fails
+        if(journal != null && durability == Durability.STRICT)
+            journal.force();
+
+        //changes journaled from here on go to a segment of their own, which stays when the one before it is emptied
+        long journalGeneration = journal != null ? journal.rollover() : NOT_JOURNALED;
+
+        ArrayList<NoteSnapshot> snapshots = new ArrayList<>();
+        ArrayList<PendingSave> taken = new ArrayList<>();
+        long queuedAt = System.nanoTime();
+
+        for(PendingSave pending : notesWaiting.values()) {
+            //a note queued again in the meantime is left for the next flush, which writes its newer state
+            if(notesWaiting.remove(pending.snapshot.id, pending)) {
+                snapshots.add(pending.snapshot);
+                taken.add(pending);
+                queuedAt = Math.min(queuedAt, pending.queuedAt);
+            }
+        }
+
+        //anything queued while the notes were being taken might have found a flush already scheduled
+        if(!notesWaiting.isEmpty())
+            scheduleFlush();
+
+        if(snapshots.isEmpty())
+            return;
+
+        long writeStart = System.nanoTime();
+
+        //every note in the flush is written in one transaction
+        boolean written = database.get().saveSnapshots(snapshots);
+        commitFlushEvent(event, snapshots, writeStart - queuedAt, written);
+
+        if(!written) {
+            requeue(taken);
+            return;
+        }
+
+        Metrics.FLUSH_TIME.recordSince(writeStart);
+        Metrics.SAVE_LATENCY.recordSince(queuedAt);
+
+        //everything the older segment held is in the database now, unless a change journaled there is still waiting
+        if(journal != null && canCompact(journalGeneration))
+            journal.compacted(journalGeneration);
+
+        notesWritten.addAndGet(snapshots.size());
+        flushes.incrementAndGet();
+
+        //notify me of completion
+        System.out.println("Executor successfully saved " + snapshots.size() + " note(s)");
+    }
+
+    /**
+     * @param journalGeneration The journal's active generation as of the last rollover
+     * @return Whether every change journaled before the rollover has been written
+     */
+    private boolean canCompact(long journalGeneration) {
+        if(queuesInProgress.get() > 0)
+            return false;
+
+        for(PendingSave pending : notesWaiting.values()) {
+            if(pending.journalGeneration != NOT_JOURNALED && pending.journalGeneration < journalGeneration)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Fills in and commits a flush's flight recorder event, if it is being recorded
+     * @param event An event begun when the flush started
+     * @param snapshots The notes the flush wrote
+     * @param oldestChangeAge Nanoseconds the oldest change had waited when the write started
+     * @param written
+     */
+    private static void commitFlushEvent(SaveFlushEvent event, Collection<NoteSnapshot> snapshots, long oldestChangeAge, boolean written) {
+        event.end();
+
+        if(!event.shouldCommit())
+            return;
+
+        int largest = -1;
+
+        for(NoteSnapshot snapshot : snapshots) {
+            int bytes = EventSizes.utf8Length(snapshot.text);
+            event.textBytes += bytes;
+
+            if(bytes > largest) {
+                largest = bytes;
+                event.largestNoteId = snapshot.id;
+            }
+        }
+
+        event.notes = snapshots.size();
+        event.oldestChangeAge = oldestChangeAge;
+        event.succeeded = written;
+        event.commit();
+    }
+
+    /**
+     * @return The older of two journal generations, ignoring NOT_JOURNALED
+     */
+    private static long olderGeneration(long a, long b) {
+        if(a == NOT_JOURNALED)
+            return b;
+
+        if(b == NOT_JOURNALED)
+            return a;
+
+        return Math.min(a, b);
+    }
+
+    /**
+     * Puts notes from a failed write back in line, unless they changed again in the meantime
+     * @param taken
+     */
+    private void requeue(Collection<PendingSave> taken) {
+        for(PendingSave pending : taken) {
+            //a newer state is waiting, but it has been waiting since this one was queued
+            notesWaiting.merge(pending.snapshot.id, pending, (latest, failed) ->
+                    new PendingSave(latest.snapshot, Math.min(latest.queuedAt, failed.queuedAt),
+                            olderGeneration(latest.journalGeneration, failed.journalGeneration)));
+        }
+
+        scheduleFlush();
+    }
+
+    /**
+     * @return The most milliseconds exiting waits for anything being saved
+     */
+    public static long getExitTimeout() {
+        return Settings.getInstance().getLong(SETTING_EXIT_TIMEOUT, DEFAULT_EXIT_TIMEOUT);
+    }
+
+    public long getFlushDelay() {
+        return flushDelay;
+    }
+
+    public void setFlushDelay(long flushDelay) {
+        this.flushDelay = Math.max(0, flushDelay);
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    /**
+     * @return How many notes are dirty right now
+     */
+    public int getPendingCount() {
+        return notesWaiting.size();
+    }
+
+    /**
+     * @return How many times a note has been queued for saving
+     */
+    public long getSaveRequests() {
+        return saveRequests.get();
+    }
+
+    /**
+     * @return How many save requests were folded into a write that was already pending
+     */
+    public long getWritesCoalesced() {
+        return writesCoalesced.get();
+    }
+
+    /**
+     * @return How many note writes actually reached the database
+     */
+    public long getNotesWritten() {
+        return notesWritten.get();
+    }
+
+    /**
+     * @return How many times the buffer has been flushed
+     */
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    /**
+     * The journal generation of a change that wasn't journaled
+     */
+    private static final long NOT_JOURNALED = -1;
+
+    /**
+     * A note waiting to be saved
+     */
+    private static class PendingSave {
+        final NoteSnapshot snapshot;
+
+        /**
+         * System.nanoTime() of when the note was first queued since it was last written
+         */
+        final long queuedAt;
+
+        /**
+         * The generation of the journal segment its latest change went to, or NOT_JOURNALED
+         */
+        final long journalGeneration;
+
+        PendingSave(NoteSnapshot snapshot, long queuedAt, long journalGeneration) {
+            this.snapshot = snapshot;
+            this.queuedAt = queuedAt;
+            this.journalGeneration = journalGeneration;
+        }
     }
 }
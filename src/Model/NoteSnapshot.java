@@ -0,0 +1,55 @@
+package Model;
+
+import Model.color.NoteColors;
+
+/**
+ * The state of a note at the moment it was queued for saving. Notes are changed on the JavaFX thread while
+ * they are written on the saver thread, so the saver is handed one of these instead of the note itself:
+ * everything it writes comes from a single moment, and nothing it reads can change under it.
+ */
+public final class NoteSnapshot {
+
+    public final long id;
+
+    public final String title;
+
+    public final String text;
+
+    /**
+     * When the note was saved, in milliseconds since the epoch
+     */
+    public final long dateSaved;
+
+    public final boolean open;
+
+    /**
+     * Packed ARGB
+     */
+    public final int color;
+
+    /**
+     * The note this was taken from, so listeners can be told which note was saved. Its fields are never
+     * read through here, since the note may have changed again since
+     */
+    final Note note;
+
+    private NoteSnapshot(Note note) {
+        this.note = note;
+
+        id = note.id;
+        title = note.getTitle();
+        text = note.getText();
+        dateSaved = note.getDateSaved().getTime();
+        open = note.isOpen();
+        color = NoteColors.pack(note.getColor());
+    }
+
+    /**
+     * Takes a snapshot of a note. Call it on the thread that changes the note
+     * @param note
+     * @return
+     */
+    public static NoteSnapshot of(Note note) {
+        return new NoteSnapshot(note);
+    }
+}
@@ -0,0 +1,81 @@
+package Model;
+
+import javafx.scene.paint.Color;
+
+import java.util.Date;
+
+/**
+ * The little bit of a note that a preview shows: its title, color, when it was saved and the start of its text.
+ * Lists of notes are read as summaries so a note's full content is only loaded once it is opened.
+ *
+ * Summaries are values. When a note changes, a new summary is made for it rather than the old one changing,
+ * so anything that tracks a summary across changes should key it by id.
+ */
+public class NoteSummary {
+
+    /**
+     * How many characters of a note's text a summary keeps. A preview shows about this many
+     */
+    public static final int SNIPPET_LENGTH = 300;
+
+    /**
+     * The id of the note this summarizes
+     */
+    public final long id;
+
+    public final String title;
+
+    /**
+     * The first SNIPPET_LENGTH characters of the note's text
+     */
+    public final String snippet;
+
+    /**
+     * When the note was last saved, in milliseconds since the epoch
+     */
+    public final long dateSaved;
+
+    public final Color color;
+
+    public NoteSummary(long id, String title, String snippet, long dateSaved, Color color) {
+        this.id = id;
+        this.title = title == null ? "" : title;
+        this.snippet = snippet == null ? "" : snippet;
+        this.dateSaved = dateSaved;
+        this.color = color;
+    }
+
+    /**
+     * Summarizes a note that is already loaded
+     * @param note
+     * @return
+     */
+    public static NoteSummary of(Note note) {
+        String text = note.getText();
+
+        if(text != null && text.length() > SNIPPET_LENGTH)
+            text = text.substring(0, SNIPPET_LENGTH);
+
+        return new NoteSummary(note.id, note.getTitle(), text, note.getDateSaved().getTime(), note.getColor());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public Date getDateSaved() {
+        return new Date(dateSaved);
+    }
+
+    public Color getColor() {
+        return color;
+    }
+}
@@ -0,0 +1,126 @@
+package Model;
+
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A small, fixed pool of read-only connections to the notes database. With the database in WAL mode,
+ * readers see the last committed state and never wait on the writer connection, so queries can run
+ * while notes are being saved in the background.
+ *
+ * Each connection keeps its own prepared statements, so a statement is never used by two threads at once.
+ */
+public class ReadConnectionPool {
+
+    /**
+     * Readers that are not currently borrowed
+     */
+    private final BlockingQueue<Reader> idleReaders;
+
+    /**
+     * Every reader the pool opened, so they can all be closed
+     */
+    private final ArrayList<Reader> allReaders = new ArrayList<>();
+
+    /**
+     * Opens the pool's connections
+     * @param url The JDBC url of the database
+     * @param size How many read connections to open
+     * @throws SQLException
+     */
+    public ReadConnectionPool(String url, int size) throws SQLException {
+        size = Math.max(1, size);
+        idleReaders = new ArrayBlockingQueue<>(size);
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(5000);
+
+        for(int i = 0; i < size; i++) {
+            Reader reader = new Reader(config.createConnection(url));
+            allReaders.add(reader);
+            idleReaders.add(reader);
+        }
+    }
+
+    /**
+     * Takes a reader out of the pool, waiting for one to be returned if they are all in use.
+     * Close the reader to give it back.
+     * @return
+     * @throws SQLException If the thread was interrupted while waiting
+     */
+    public Reader borrow() throws SQLException {
+        try {
+            return idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        }
+    }
+
+    /**
+     * Closes every connection in the pool
+     */
+    public void close() {
+        for(Reader reader : allReaders) {
+            try {
+                reader.connection.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * A read-only connection borrowed from the pool, along with its prepared statements
+     */
+    public class Reader implements AutoCloseable {
+
+        private final Connection connection;
+
+        /**
+         * This connection's prepared statements, keyed by their SQL
+         */
+        private final HashMap<String, PreparedStatement> statements = new HashMap<>();
+
+        private Reader(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Returns this connection's prepared statement for some SQL, preparing it the first time it is used
+         * @param sql
+         * @return
+         * @throws SQLException
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+
+            if(statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+
+            return statement;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Returns me to the pool
+         */
+        @Override
+        public void close() {
+            idleReaders.offer(this);
+        }
+    }
+}
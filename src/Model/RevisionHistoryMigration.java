@@ -0,0 +1,22 @@
+package Model;
+
+import Model.history.RevisionStore;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Version 2: adds the table that keeps each note's revisions. Notes start their history the next time they change,
+ * so nothing needs to be rewritten.
+ */
+class RevisionHistoryMigration extends Migration {
+
+    RevisionHistoryMigration() {
+        super(2, "note revision history");
+    }
+
+    @Override
+    void migrate(Connection connection) throws SQLException {
+        RevisionStore.createTable(connection);
+    }
+}
@@ -0,0 +1,41 @@
+package Model;
+
+/**
+ * A note that matched a full-text search, along with a snippet of the text around
+ * the match and how well it matched
+ */
+public class SearchResult {
+
+    /**
+     * The note that matched
+     */
+    public final Note note;
+
+    /**
+     * A short piece of the note's title or content around the matching words
+     */
+    public final String snippet;
+
+    /**
+     * The bm25 score of the match. Lower is better
+     */
+    public final double rank;
+
+    public SearchResult(Note note, String snippet, double rank) {
+        this.note = note;
+        this.snippet = snippet;
+        this.rank = rank;
+    }
+
+    public Note getNote() {
+        return note;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public double getRank() {
+        return rank;
+    }
+}
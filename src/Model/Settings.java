@@ -0,0 +1,102 @@
+package Model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Per-install settings for Jot. Values are read from jot.properties in the Jot data directory,
+ * and any of them can be overridden on the command line with a -D system property of the same name.
+ */
+public class Settings {
+
+    /**
+     * Name of the folder inside the user's Documents folder that holds all of Jot's files
+     */
+    private static final String DIRECTORY_NAME = "Jot";
+
+    /**
+     * Name of the settings file inside the data directory
+     */
+    private static final String SETTINGS_FILE_NAME = "jot.properties";
+
+    /**
+     * The settings singleton instance!
+     */
+    private static final Settings instance = new Settings();
+
+    public static Settings getInstance() {
+        return instance;
+    }
+
+    /**
+     * The directory that holds the database and the settings file
+     */
+    private final File dataDirectory;
+
+    /**
+     * Values loaded from the settings file
+     */
+    private final Properties properties = new Properties();
+
+    private Settings() {
+        dataDirectory = new File(System.getProperty("user.home") + File.separator + "Documents" +
+                File.separator + DIRECTORY_NAME);
+
+        if(!dataDirectory.exists()) {
+            dataDirectory.mkdirs();
+        }
+
+        File settingsFile = new File(dataDirectory, SETTINGS_FILE_NAME);
+
+        if(settingsFile.exists()) {
+            try (InputStream in = new FileInputStream(settingsFile)) {
+                properties.load(in);
+            } catch (IOException e) {
+                System.out.println("Unable to read settings file: " + settingsFile);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * @return The directory that Jot keeps its files in
+     */
+    public File getDataDirectory() {
+        return dataDirectory;
+    }
+
+    /**
+     * Returns a setting's raw value. System properties take priority over the settings file.
+     * @param key
+     * @param defaultValue Returned when the setting is not configured anywhere
+     * @return
+     */
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+
+        if(value == null)
+            value = properties.getProperty(key);
+
+        return value == null ? defaultValue : value.trim();
+    }
+
+    public long getLong(String key, long defaultValue) {
+        try {
+            return Long.parseLong(getString(key, Long.toString(defaultValue)));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid value for setting " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return (int)getLong(key, defaultValue);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, Boolean.toString(defaultValue)));
+    }
+}
@@ -0,0 +1,134 @@
+package Model;
+
+import Model.metrics.Metrics;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Does the slow part of startup on its own thread: opening the database, which creates or checks its tables,
+ * replaying the edit journal and reading the notes that open at startup. It is started before the toolkit,
+ * so this work overlaps with the toolkit and splash screen coming up.
+ */
+public class StartupLoader {
+
+    private final StartupSnapshot snapshot;
+
+    /**
+     * Whether the snapshot's windows can be drawn before the database is open
+     */
+    private final boolean snapshotUsable;
+
+    /**
+     * The database's copy of every note that is flagged open or was in the snapshot
+     */
+    private final CompletableFuture<ArrayList<Note>> storedNotes = new CompletableFuture<>();
+
+    private StartupLoader() {
+        snapshot = StartupSnapshot.read();
+
+        //after a crash the journal holds edits the snapshot doesn't have, so the database has to come first
+        snapshotUsable = !snapshot.isEmpty() && !NoteSaveExecutor.getInstance().hasJournaledEdits();
+    }
+
+    /**
+     * Reads the startup snapshot and starts loading the database in the background
+     * @return
+     */
+    public static StartupLoader start() {
+        StartupLoader loader = new StartupLoader();
+
+        Thread thread = new Thread(loader::load, "Jot startup");
+        thread.setDaemon(true);
+        thread.start();
+
+        return loader;
+    }
+
+    private void load() {
+        ArrayList<Note> stored = new ArrayList<>();
+
+        try {
+            Database database = Database.getInstance();
+            StartupTiming.mark("database open");
+
+            //edits a crash kept from being saved are put back before any note is shown. When the snapshot is
+            //used the journal was empty, and anything in it now is an edit made since the windows came up
+            if(!snapshotUsable)
+                NoteSaveExecutor.getInstance().replayJournal();
+
+            stored = database.getOpenNotes();
+
+            HashSet<Long> ids = new HashSet<>();
+            for(Note note : stored)
+                ids.add(note.id);
+
+            for(StartupSnapshot.Entry entry : snapshot.getEntries()) {
+                if(!ids.contains(entry.id)) {
+                    Note note = database.getNote(entry.id);
+
+                    if(note != null)
+                        stored.add(note);
+                }
+            }
+
+            StartupTiming.mark("open notes read");
+
+            //off the way of the first window, since starting JMX takes a moment
+            Metrics.register();
+        } catch (RuntimeException e) {
+            System.out.println("Unable to load the notes to open at startup");
+            e.printStackTrace();
+        } catch (Throwable e) {
+            //the database couldn't be opened at all, such as when SQLite's native library won't load
+            System.out.println("Unable to open the database");
+            e.printStackTrace();
+            storedNotes.completeExceptionally(e);
+        } finally {
+            //whatever happened, nobody is left waiting. Does nothing if it already failed
+            storedNotes.complete(stored);
+        }
+    }
+
+    /**
+     * @return The windows that were open when Jot last exited. Where they were is used even when the snapshot isn't
+     */
+    public StartupSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isSnapshotUsable() {
+        return snapshotUsable;
+    }
+
+    /**
+     * Waits for the database to open and the startup notes to be read
+     * @throws CompletionException Holding the error, if the database couldn't be opened
+     */
+    public void await() {
+        storedNotes.join();
+    }
+
+    /**
+     * Tells a consumer on the JavaFX thread if the database couldn't be opened
+     * @param consumer
+     */
+    public void whenFailed(Consumer<Throwable> consumer) {
+        storedNotes.whenComplete((notes, error) -> {
+            if(error != null)
+                Platform.runLater(() -> consumer.accept(error));
+        });
+    }
+
+    /**
+     * Hands the stored notes over on the JavaFX thread once they are read
+     * @param consumer
+     */
+    public void whenLoaded(Consumer<ArrayList<Note>> consumer) {
+        storedNotes.thenAccept(notes -> Platform.runLater(() -> consumer.accept(notes)));
+    }
+}
@@ -0,0 +1,272 @@
+package Model;
+
+import Model.color.NoteColors;
+import javafx.stage.Stage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The notes that were open when Jot last exited, along with where their windows were. It is written on exit
+ * and read at startup without touching the database, so those windows can be drawn while the database is still
+ * opening. The database is checked against it once it is ready.
+ *
+ * The snapshot is written after the database closes, so a database file that changed after it means the last
+ * run didn't exit cleanly, and the snapshot is ignored.
+ */
+public class StartupSnapshot {
+
+    private static final String FILE_NAME = "jot.snapshot";
+
+    /**
+     * "JOTS"
+     */
+    private static final int MAGIC = 0x4A4F5453;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final StartupSnapshot EMPTY = new StartupSnapshot(Collections.emptyList());
+
+    private final List<Entry> entries;
+
+    public StartupSnapshot(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * @return Where the snapshot is kept
+     */
+    public static File getFile() {
+        return new File(Settings.getInstance().getDataDirectory(), FILE_NAME);
+    }
+
+    /**
+     * Maps the snapshot file and reads it
+     * @return The snapshot, or an empty one if there is none or it can't be read
+     */
+    public static StartupSnapshot read() {
+        File file = getFile();
+
+        if(!file.exists() || isOlderThanDatabase(file))
+            return EMPTY;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION)
+                return EMPTY;
+
+            //the last 4 bytes are a checksum of everything before them
+            byte[] body = new byte[buffer.limit() - 4];
+            buffer.rewind();
+            buffer.get(body);
+            if(checksum(body) != buffer.getInt())
+                return EMPTY;
+
+            buffer.position(8);
+            int count = buffer.getInt();
+            ArrayList<Entry> entries = new ArrayList<>(count);
+
+            for(int i = 0; i < count; i++) {
+                entries.add(new Entry(buffer.getLong(), buffer.getLong(), buffer.getInt(),
+                        buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble(),
+                        readString(buffer), readString(buffer)));
+            }
+
+            return new StartupSnapshot(entries);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.out.println("Unable to read the startup snapshot.");
+            e.printStackTrace();
+            return EMPTY;
+        }
+    }
+
+    /**
+     * @param file
+     * @return Whether the database has been written to since the snapshot was
+     */
+    private static boolean isOlderThanDatabase(File file) {
+        File directory = Settings.getInstance().getDataDirectory();
+
+        for(String name : new String[] { Database.DATABASE_NAME, Database.DATABASE_NAME + "-wal" }) {
+            File databaseFile = new File(directory, name);
+
+            if(databaseFile.exists() && databaseFile.lastModified() > file.lastModified()) {
+                System.out.println("The startup snapshot is older than the database. Ignoring it.");
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Writes the snapshot, replacing the old one in a single move so a snapshot is never half written
+     */
+    public void write() {
+        File file = getFile();
+        File temp = new File(file.getPath() + ".tmp");
+
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entries.size());
+
+            for(Entry entry : entries) {
+                out.writeLong(entry.id);
+                out.writeLong(entry.dateSaved);
+                out.writeInt(entry.color);
+                out.writeDouble(entry.x);
+                out.writeDouble(entry.y);
+                out.writeDouble(entry.width);
+                out.writeDouble(entry.height);
+                writeString(out, entry.title);
+                writeString(out, entry.text);
+            }
+
+            out.writeInt(checksum(body.toByteArray()));
+            out.flush();
+
+            try (BufferedOutputStream fileOut = new BufferedOutputStream(new FileOutputStream(temp))) {
+                body.writeTo(fileOut);
+            }
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Unable to write the startup snapshot.");
+            e.printStackTrace();
+        }
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @param id
+     * @return The entry for a note, or null if it wasn't open
+     */
+    public Entry getEntry(long id) {
+        for(Entry entry : entries) {
+            if(entry.id == id)
+                return entry;
+        }
+
+        return null;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = (string == null ? "" : string).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * An open note and its window
+     */
+    public static class Entry {
+        public final long id;
+
+        /**
+         * When the note was saved, in milliseconds since the epoch
+         */
+        public final long dateSaved;
+
+        /**
+         * Packed ARGB
+         */
+        public final int color;
+
+        public final double x;
+        public final double y;
+        public final double width;
+        public final double height;
+
+        public final String title;
+        public final String text;
+
+        public Entry(long id, long dateSaved, int color, double x, double y, double width, double height,
+                     String title, String text) {
+            this.id = id;
+            this.dateSaved = dateSaved;
+            this.color = color;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.title = title;
+            this.text = text;
+        }
+
+        /**
+         * Records a note and the window it is shown in
+         * @param note
+         * @param stage
+         */
+        public static Entry of(Note note, Stage stage) {
+            return new Entry(note.id, note.getDateSaved().getTime(), NoteColors.pack(note.getColor()),
+                    stage.getX(), stage.getY(), stage.getWidth(), stage.getHeight(),
+                    note.getTitle(), note.getText());
+        }
+
+        /**
+         * @return An open note with the snapshot's title, text and color
+         */
+        public Note toNote() {
+            Note note = new Note(id, title, text, new Date(dateSaved));
+            note.setColor(NoteColors.unpack(color));
+            note.setOpen(true);
+
+            //setting the color counts as an edit and stamps the note with the current time
+            note.setDateSaved(new Date(dateSaved));
+            return note;
+        }
+
+        /**
+         * Puts a window where this entry's window was
+         * @param stage
+         */
+        public void applyGeometry(Stage stage) {
+            stage.setX(x);
+            stage.setY(y);
+            stage.setWidth(width);
+            stage.setHeight(height);
+        }
+    }
+}
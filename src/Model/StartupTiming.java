@@ -0,0 +1,51 @@
+package Model;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when each stage of startup is reached, in milliseconds since the JVM started, so time-to-first-window
+ * can be tracked from run to run. Each stage is printed as it is reached.
+ */
+public class StartupTiming {
+
+    public static final String STAGE_FIRST_WINDOW = "first window shown";
+
+    /**
+     * Every stage reached so far, in order
+     */
+    private static final LinkedHashMap<String, Long> stages = new LinkedHashMap<>();
+
+    private StartupTiming() {
+    }
+
+    /**
+     * Records that a stage was reached. Only the first time counts
+     * @param stage
+     */
+    public static synchronized void mark(String stage) {
+        if(stages.containsKey(stage))
+            return;
+
+        long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        stages.put(stage, uptime);
+
+        System.out.println("Startup: " + stage + " at " + uptime + " ms");
+    }
+
+    /**
+     * @return Each stage reached so far and when, in order
+     */
+    public static synchronized Map<String, Long> getStages() {
+        return new LinkedHashMap<>(stages);
+    }
+
+    /**
+     * @return Milliseconds from the JVM starting to the first window showing, or -1 if none has shown yet
+     */
+    public static synchronized long getTimeToFirstWindow() {
+        Long time = stages.get(STAGE_FIRST_WINDOW);
+        return time == null ? -1 : time;
+    }
+}
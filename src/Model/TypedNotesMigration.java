@@ -0,0 +1,172 @@
+package Model;
+
+import Model.color.NoteColors;
+import javafx.scene.paint.Color;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+
+/**
+ * Version 1: notes move from the all-text table older versions created to the typed table.
+ *
+ * At startup the old table is renamed out of the way, a typed table takes its place and the open notes are moved
+ * over so they show up again. Every other note is moved in the background, most recent ids first. Notes are
+ * added to the search index as they move, so a note shows up in the notes list and searches once it has moved.
+ */
+class TypedNotesMigration extends Migration {
+
+    /**
+     * Where the old table waits while its notes are moved
+     */
+    private static final String TABLE_LEGACY_NOTES = "notes_legacy";
+
+    TypedNotesMigration() {
+        super(1, "typed note columns");
+    }
+
+    @Override
+    void migrate(Connection connection) throws SQLException {
+        //new databases, and ones converted at startup by earlier builds, are already typed
+        if(!hasUntypedNotesTable(connection))
+            return;
+
+        try (Statement statement = connection.createStatement()) {
+            //the triggers and index would follow the old table when it is renamed. The search index is
+            //started over, so the moved notes are indexed by the new table's triggers as they arrive
+            statement.executeUpdate("DROP TRIGGER IF EXISTS " + Database.TABLE_NOTES_SEARCH + "_insert");
+            statement.executeUpdate("DROP TRIGGER IF EXISTS " + Database.TABLE_NOTES_SEARCH + "_delete");
+            statement.executeUpdate("DROP TRIGGER IF EXISTS " + Database.TABLE_NOTES_SEARCH + "_update");
+            statement.executeUpdate("DROP TABLE IF EXISTS " + Database.TABLE_NOTES_SEARCH);
+            statement.executeUpdate("DROP INDEX IF EXISTS " + Database.INDEX_NOTES_DATE_SAVED);
+
+            statement.executeUpdate("ALTER TABLE " + Database.TABLE_NOTES + " RENAME TO " + TABLE_LEGACY_NOTES);
+        }
+
+        Database.createNotesTable(connection, Database.TABLE_NOTES);
+
+        //open notes are opened again at startup, so they can't wait
+        int moved = moveNotes(connection, " WHERE " + Database.COLUMN_OPEN + " IN ('1', 'true') ", 0);
+        System.out.println("Moved " + moved + " open notes to the typed table.");
+    }
+
+    @Override
+    boolean hasBackgroundWork(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT name FROM sqlite_master " +
+                     " WHERE type = 'table' AND name = '" + TABLE_LEGACY_NOTES + "'")) {
+            return result.next();
+        }
+    }
+
+    @Override
+    boolean runBatch(Connection connection, int batchSize) throws SQLException {
+        if(moveNotes(connection, "", batchSize) == batchSize)
+            return true;
+
+        //every note has moved
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE " + TABLE_LEGACY_NOTES);
+        }
+
+        return false;
+    }
+
+    /**
+     * Copies notes from the old table into the typed one, then removes them from the old table
+     * @param connection
+     * @param where Which notes to move, or an empty string for any
+     * @param limit The most notes to move, or 0 for no limit
+     * @return How many notes were moved
+     */
+    private int moveNotes(Connection connection, String where, int limit) throws SQLException {
+        ArrayList<Long> moved = new ArrayList<>();
+
+        try (Statement statement = connection.createStatement();
+             PreparedStatement insert = connection.prepareStatement(" INSERT INTO " + Database.TABLE_NOTES + "( " +
+                     Database.COLUMN_ID + ", " + Database.COLUMN_TITLE + ", " + Database.COLUMN_CONTENT + ", " +
+                     Database.COLUMN_DATE_SAVED + ", " + Database.COLUMN_OPEN + ", " + Database.COLUMN_COLOR + " ) " +
+                     " VALUES (?, ?, ?, ?, ?, ?)")) {
+
+            //the old id column is indexed by its primary key, so each batch is a seek rather than a sort
+            try (ResultSet rows = statement.executeQuery("SELECT * FROM " + TABLE_LEGACY_NOTES + where +
+                    " ORDER BY " + Database.COLUMN_ID + " DESC " +
+                    (limit > 0 ? " LIMIT " + limit : ""))) {
+
+                while(rows.next()) {
+                    long id = rows.getLong(Database.COLUMN_ID);
+                    java.sql.Date dateSaved = rows.getDate(Database.COLUMN_DATE_SAVED);
+
+                    insert.setLong(1, id);
+                    insert.setString(2, rows.getString(Database.COLUMN_TITLE));
+                    insert.setString(3, rows.getString(Database.COLUMN_CONTENT));
+                    insert.setLong(4, dateSaved == null ? System.currentTimeMillis() : dateSaved.getTime());
+                    insert.setInt(5, isLegacyOpen(rows.getString(Database.COLUMN_OPEN)) ? 1 : 0);
+                    insert.setInt(6, NoteColors.pack(decodeLegacyColor(rows.getString(Database.COLUMN_COLOR))));
+                    insert.addBatch();
+
+                    moved.add(id);
+                }
+            }
+
+            insert.executeBatch();
+        }
+
+        try (PreparedStatement delete = connection.prepareStatement(
+                " DELETE FROM " + TABLE_LEGACY_NOTES + " WHERE " + Database.COLUMN_ID + " = ? ")) {
+            for(long id : moved) {
+                delete.setLong(1, id);
+                delete.addBatch();
+            }
+
+            delete.executeBatch();
+        }
+
+        return moved.size();
+    }
+
+    /**
+     * @return Whether the notes table still has the text columns older versions created
+     */
+    private static boolean hasUntypedNotesTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet columns = statement.executeQuery("PRAGMA table_info(" + Database.TABLE_NOTES + ")")) {
+
+            while(columns.next()) {
+                if(Database.COLUMN_COLOR.equals(columns.getString("name")))
+                    return "TEXT".equalsIgnoreCase(columns.getString("type"));
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Reads a color the way older versions stored it: 3 decimals between 0 and 1, all separated by a comma
+     * @param color
+     * @return The color, or the default note color if it can't be read
+     */
+    private static Color decodeLegacyColor(String color) {
+        try {
+            //an array of 3 components: R, G, and B!
+            String colorStr[] = color.split(",");
+
+            //alpha is always 1. Our notes are not transparent!
+            return new Color(Float.parseFloat(colorStr[0]), Float.parseFloat(colorStr[1]), Float.parseFloat(colorStr[2]), 1.0);
+        } catch(RuntimeException ex) {
+            return NoteColors.DEFAULT_COLOR.getColor();
+        }
+    }
+
+    /**
+     * Reads the open flag the way older versions stored it
+     * @param open
+     * @return
+     */
+    private static boolean isLegacyOpen(String open) {
+        return "1".equals(open) || "true".equalsIgnoreCase(open);
+    }
+}
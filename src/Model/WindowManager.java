@@ -1,14 +1,22 @@
 package Model;
 
+import Model.metrics.Metrics;
 import controller.NoteController;
 import controller.NotePreviewController;
 import controller.NotesListController;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 
-import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by DanDan on 5/22/2016.
@@ -16,32 +24,122 @@ import java.util.ArrayList;
 public class WindowManager implements NoteControllerHost, Note.NoteListener {
 
     /**
-     * A list of all notes currently showing in their own window
+     * Every open note window, keyed by the id of the note it shows, in the order they were opened
      */
-    private ArrayList<Note> openNotes = new ArrayList<>();
+    private LinkedHashMap<Long, Window> windows = new LinkedHashMap<>();
 
     /**
-     * A list of all the currently open note windows
+     * The controller for the notes list/notes preview grid
      */
-    private ArrayList<Window> windows = new ArrayList<>();
+    private NotesListController notesListController;
 
     /**
-     * The controller for the notes list/notes preview grid
+     * The windows that were open when Jot last exited
      */
-    private NotesListController notesListController;
+    private final StartupSnapshot snapshot;
+
+    /**
+     * Every note window that has closed, and where it was. The ones whose notes are still flagged open when
+     * Jot exits make up the next startup snapshot
+     */
+    private final LinkedHashMap<Note, StartupSnapshot.Entry> closedWindows = new LinkedHashMap<>();
 
     /**
-     * Loads all notes from the database, and shows them all at once
+     * Called once the first window is showing
      */
-    public WindowManager() {
+    private final Runnable onFirstWindow;
 
+    private boolean firstWindowShown = false;
 
-        ArrayList<Note> previouslyOpen = Database.getInstance().getOpenNotes();
-        System.out.println("Open notes: " + previouslyOpen.size());
-        for(Note note : previouslyOpen)
-            showNote(note);
+    /**
+     * Shows the notes that were open last time. When there is a snapshot of them they are drawn from it right away,
+     * and checked against the database once the loader has opened it
+     * @param loader
+     * @param onFirstWindow Called once the first window is showing, such as to take down the splash screen
+     */
+    public WindowManager(StartupLoader loader, Runnable onFirstWindow) {
+        this.snapshot = loader.getSnapshot();
+        this.onFirstWindow = onFirstWindow;
+
+        if(loader.isSnapshotUsable()) {
+            ArrayList<Note> notes = new ArrayList<>();
+            for(StartupSnapshot.Entry entry : snapshot.getEntries())
+                notes.add(entry.toNote());
+
+            showGradually(notes, () -> loader.whenLoaded(this::finishStartup));
+        } else {
+            loader.whenLoaded(this::finishStartup);
+        }
+    }
 
+    /**
+     * Shows notes one per pulse, so each window is drawn as soon as it is built instead of all of them
+     * appearing together at the end
+     * @param notes
+     * @param then Run once every note is showing
+     */
+    private void showGradually(List<Note> notes, Runnable then) {
+        if(notes.isEmpty()) {
+            then.run();
+            return;
+        }
+
+        Iterator<Note> remaining = notes.iterator();
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                Note note = remaining.next();
+                showNote(note, snapshot.getEntry(note.id));
+
+                if(!remaining.hasNext()) {
+                    stop();
+                    then.run();
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Opens the open notes that don't have a window yet, and settles the windows drawn from the snapshot with the
+     * database
+     * @param stored The database's copy of every note that is open or has a window
+     */
+    private void finishStartup(ArrayList<Note> stored) {
+        System.out.println("Open notes: " + stored.size());
+        HashSet<Long> storedIds = new HashSet<>();
+        ArrayList<Note> toShow = new ArrayList<>();
+
+        for(Note note : stored) {
+            storedIds.add(note.id);
+            Window window = windows.get(note.id);
+
+            if(window == null) {
+                if(note.isOpen())
+                    toShow.add(note);
+            } else {
+                adoptSnapshotNote(window, note);
+            }
+        }
+
+        showGradually(toShow, () -> setUpNotesList(storedIds));
+    }
+
+    /**
+     * Builds the notes list, the last step of startup, and closes the windows of notes that were deleted
+     * after the snapshot was written
+     * @param storedIds The ids of every note that is open or has a window and still exists
+     */
+    private void setUpNotesList(HashSet<Long> storedIds) {
         notesListController = new NotesListController(this);
+
+        //keep the notes list and the note windows up to date one change at a time. Changes can be committed on any thread
+        Database.getInstance().addListener(change -> Platform.runLater(() -> {
+            if(change.type == DatabaseChange.Type.RESTORED)
+                applyRestored(change.notes);
+
+            notesListController.applyChange(change);
+        }));
         notesListController.getStage().setOnHidden(event -> {
             System.out.println("Notes List hidden");
 
@@ -50,9 +148,80 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
             }
         });
 
-        if(openNotes.size() == 0)
+        ArrayList<Long> deleted = new ArrayList<>();
+        for(long id : windows.keySet()) {
+            if(!storedIds.contains(id))
+                deleted.add(id);
+        }
+
+        //the list has to be up before the last window closes, or closing it would exit
+        if(deleted.size() == windows.size()) {
             notesListController.getStage().show();
+            windowShown();
+        }
+
+        for(long id : deleted)
+            closeDeletedNote(id);
+
+        StartupTiming.mark("startup finished");
+    }
+
+    /**
+     * Records the first window showing
+     */
+    private void windowShown() {
+        if(firstWindowShown)
+            return;
+
+        firstWindowShown = true;
+        StartupTiming.mark(StartupTiming.STAGE_FIRST_WINDOW);
 
+        if(onFirstWindow != null)
+            onFirstWindow.run();
+    }
+
+    /**
+     * Settles a window drawn from the snapshot with the database's copy of its note. The database's copy wins
+     * if it was saved later, which it won't be if the note was edited since its window opened
+     * @param window
+     * @param stored
+     */
+    private void adoptSnapshotNote(Window window, Note stored) {
+        Note note = window.getNote();
+
+        if(stored.getDateSaved().after(note.getDateSaved())) {
+            note.copyFrom(stored);
+            note.setOpen(true);
+            window.reloadNote();
+        }
+
+        //the window's note becomes the one everything else is handed
+        Database.getInstance().adoptNote(note);
+    }
+
+    /**
+     * Puts the state of restored notes in their live notes, and shows it in their windows
+     * @param restored Copies of the notes as they were restored and saved
+     */
+    private void applyRestored(List<Note> restored) {
+        for(Note copy : restored) {
+            Note note = Database.getInstance().getLiveNote(copy.id);
+
+            //nothing has the note loaded, so the next read gets the restored state
+            if(note == null)
+                continue;
+
+            note.setTitle(copy.getTitle());
+            note.setText(copy.getText());
+            note.setDateSaved(copy.getDateSaved());
+
+            //setting them queued a save of what was just saved
+            NoteSaveExecutor.getInstance().removeNote(note);
+
+            Window window = windows.get(note.id);
+            if(window != null)
+                window.reloadNote();
+        }
     }
 
     /**
@@ -60,7 +229,7 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
      * @return Whether or not the master note list stage is showing
      */
     public boolean isNotesListShowing() {
-        return notesListController.getStage().isShowing();
+        return notesListController != null && notesListController.getStage().isShowing();
     }
 
     /**
@@ -69,96 +238,111 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
      * @param note
      */
     public void showNote(Note note) {
+        showNote(note, null);
+    }
+
+    /**
+     * Shows a note, putting a new window where it was last time
+     * @param note
+     * @param geometry Where the window was when Jot last exited, or null to let it open anywhere
+     */
+    private void showNote(Note note, StartupSnapshot.Entry geometry) {
+        Window window = windows.get(note.id);
+
         //we only want to show the note in a new window if it is
         //not already open.
-        if(!openNotes.contains(note)) {
+        if(window == null) {
+            long start = System.nanoTime();
 
             NoteController noteController = new NoteController(note, this);
+
+            if(geometry != null)
+                geometry.applyGeometry(noteController.getStage());
+
             noteController.getStage().show();
+            Metrics.WINDOW_OPEN.recordSince(start);
+            windowShown();
 
             trackNote(note, noteController);
 
             //hook up the listener that tracks when notes are closed
             noteController.getStage().setOnHidden(new CloseNoteListener(note, noteController));
-        } //if !openNotes.contains(note)
+        } //if window == null
 
         //otherwise we want to bring it to the front, as it is already open
         else {
-            windows.get(openNotes.indexOf(note)).getStage().toFront();
+            window.getStage().toFront();
         }
     }
 
     /**
-     * Creates and shows a brand new note, instantiated directly from the database
-     * and calls onNotesDatabaseChanged()
+     * Creates a brand new note in the database, and shows it once it is created.
+     * The notes list hears about it through the database's change events
      */
     @Override
     public void createNote() {
-        try {
-            showNote(Database.getInstance().newNote());
-            onNotesDatabaseChanged();
-        } catch(SQLException ex) {
-            System.out.println("Error creating a new note");
-            System.out.println(ex.getMessage());
-            ex.printStackTrace();
-        }
+        AsyncDatabase.getInstance().newNote()
+                .thenAcceptAsync(this::showNote, AsyncDatabase.FX_THREAD)
+                .exceptionally(ex -> {
+                    System.out.println("Error creating a new note");
+                    ex.printStackTrace();
+                    return null;
+                });
     }
 
     /**
-     * Deletes a note from the database and calls
-     * onNotesDatabaseChanged. Used for single note deletion
+     * Deletes a note from the database. Used for single note deletion
      * @param note
      */
     @Override
     public void deleteNote(Note note) {
         deleteNoteNoReload(note);
-
-        onNotesDatabaseChanged();
     }
 
     /**
-     * Deletes a note from the database but does NOT call onNotesDatabaseChanged() to notify the
-     * listener that changes have been made. Use this method for batch deleting, where the
-     * onDatabaseChanged() method should be called at the end.
+     * Deletes a note from the database and closes its window. The notes list is updated by
+     * the database's change event, so nothing is reloaded.
      * @param note
      */
     public void deleteNoteNoReload(Note note) {
-        Database.getInstance().deleteNote(note);
+        //a pending save would be wasted on a note that no longer exists
+        NoteSaveExecutor.getInstance().removeNote(note);
+        AsyncDatabase.getInstance().deleteNote(note);
 
-        //if the note is open, we need to close its window
-        //because it's being deleted
-        if(openNotes.contains(note)) {
+        closeDeletedNote(note.id);
+    }
 
-            //so loop through every open window until we find the one
-            //that is showing the note we are deleting
-            for (int i = 0; i < windows.size(); i++) {
+    /**
+     * Closes the window of a note that was deleted, if it has one
+     * @param id The id of the deleted note
+     */
+    private void closeDeletedNote(long id) {
+        //if the note is open, we need to close its window
+        //because it's being deleted. Closing it stops tracking it
+        Window window = windows.get(id);
 
-                //if we've found the window showing this note,
-                //close it and then stop tracking the note/window
-                if(windows.get(i).getNote().equals(note)) {
-                    windows.get(i).getStage().close();
-                }
-            }
-        }
+        if(window != null)
+            window.closeDeleted();
     }
 
     /**
-     * Deletes all the notes passed in in the parameter, and at the end calls
-     * onNotesDatabaseChanged
-     * @param notes All the notes requiring deletion
+     * Deletes all the notes passed in in the parameter in a single transaction.
+     * Only ids are needed, so notes that aren't loaded are never read just to be deleted
+     * @param ids The ids of all the notes requiring deletion
      */
     @Override
-    public void deleteAllNotes(ArrayList<Note> notes) {
+    public void deleteAllNotes(long[] ids) {
 
-        //Delete all the notes without calling
-        //onDatabaseChanged
-        for(Note note : notes) {
-            deleteNoteNoReload(note);
+        //Delete all the notes in one transaction
+        for(long id : ids) {
+            NoteSaveExecutor.getInstance().removeNote(id);
         }
 
-        //At the end, after all changes are made, call
-        //onNotesDatabaseChanged();
-        onNotesDatabaseChanged();
+        AsyncDatabase.getInstance().deleteNotes(ids);
+
+        for(long id : ids) {
+            closeDeletedNote(id);
+        }
     }
 /**
      * Shows the notes list window, if it is not already showing.
@@ -166,6 +350,10 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
      */
     @Override
     public void showNotesList() {
+        //the database is still opening
+        if(notesListController == null)
+            return;
+
         //If the notes list is not already showing,s how it
         if(!notesListController.getStage().isShowing())
             notesListController.getStage().show();
@@ -180,10 +368,9 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
      * @param noteController
      */
     private void trackNote(Note note, NoteController noteController) {
-        openNotes.add(note);
         note.setHost(this);
 
-        windows.add(noteController);
+        windows.put(note.id, noteController);
     }
 
     @Override
@@ -191,19 +378,15 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
 
         //if the notes list window is not showing, that means we're doing a global close.
         //Tell the NoteControllers this!
-        if(!notesListController.getStage().isShowing()) {
+        if(!isNotesListShowing()) {
             NoteController.enableGlobalClose();
         }
 
-        for(int i = windows.size() - 1; i >= 0; i--)
-            windows.get(i).getStage().hide();
-    }
+        //hiding a window stops tracking it, so work from a copy, most recently opened first
+        ArrayList<Window> closing = new ArrayList<>(windows.values());
 
-    /**
-     * Notifies the notes list window that the database has changed, so it can re-query the database
-     */
-    private void onNotesDatabaseChanged() {
-        notesListController.reload();
+        for(int i = closing.size() - 1; i >= 0; i--)
+            closing.get(i).getStage().hide();
     }
 
     /**
@@ -212,7 +395,8 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
      */
     @Override
     public void noteChanged(Note note) {
-        notesListController.refresh(note);
+        if(notesListController != null)
+            notesListController.refresh(note);
     }
 
     /**
@@ -229,14 +413,45 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
      * @return True if all notes are closed and the noteListController's window is not visible; ie: No windows are open
      */
     private boolean allWindowsClosed() {
-        return openNotes.size() == 0 && !notesListController.getStage().isShowing();
+        return windows.isEmpty() && !isNotesListShowing();
     }
 
     private void exit() {
+        //write any edits that are still waiting in the save buffer, and finish any deletes, before the database goes away.
+        //Both share one exit timeout, and the edits are still flushed in whatever is left of it when a delete is slow.
+        //If a write is stuck, closing would wait behind it, so leave the edits to the journal and the database to its own recovery
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(NoteSaveExecutor.getExitTimeout());
+        boolean written = AsyncDatabase.getInstance().awaitWrites(NoteSaveExecutor.getExitTimeout());
+        long remaining = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+
+        if(!NoteSaveExecutor.getInstance().flushBeforeExit(remaining) || !written)
+            System.exit(0);
+
+        NoteSaveExecutor.getInstance().close();
+
         Database.getInstance().close();
+
+        //written last, so a database that changes after it shows the snapshot is out of date
+        writeSnapshot();
+
         System.exit(0);
     }
 
+    /**
+     * Records the windows that will open again next time, in the order they were opened
+     */
+    private void writeSnapshot() {
+        ArrayList<StartupSnapshot.Entry> entries = new ArrayList<>();
+
+        //windows close most recently opened first
+        for(Map.Entry<Note, StartupSnapshot.Entry> closed : closedWindows.entrySet()) {
+            if(closed.getKey().isOpen())
+                entries.add(0, closed.getValue());
+        }
+
+        new StartupSnapshot(entries).write();
+    }
+
     /**
      * Class that listens for the closing of a note window. If the last note is closed, the program exits
      */
@@ -269,8 +484,9 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
          */
         @Override
         public void handle(WindowEvent event) {
-            windows.remove(windows.get(openNotes.indexOf(note)));
-            openNotes.remove(note);
+            //only forget the window if it is still the one tracked for this note
+            windows.remove(note.id, noteController);
+            closedWindows.put(note, StartupSnapshot.Entry.of(note, noteController.getStage()));
             note.setHost(null);
 
             //check if all windows are closed
@@ -280,13 +496,31 @@ public class WindowManager implements NoteControllerHost, Note.NoteListener {
         }
     }
 
+    /**
+     * @return A new list of the notes that are open in their own window, in the order they were opened
+     */
     @Override
     public ArrayList<Note> getOpenNotes() {
-        return this.openNotes;
+        ArrayList<Note> openNotes = new ArrayList<>(windows.size());
+
+        for(Window window : windows.values())
+            openNotes.add(window.getNote());
+
+        return openNotes;
     }
 
     public interface Window {
         Stage getStage();
         Note getNote();
+
+        /**
+         * Shows the note's saved state again after it changed outside the window
+         */
+        void reloadNote();
+
+        /**
+         * Closes the window of a note that was deleted, without saving the note
+         */
+        void closeDeleted();
     }
 }
@@ -49,5 +49,26 @@ public class NoteColors {
         return colors;
     }
 
+    /**
+     * Color is stored as a single ARGB int, 8 bits per channel
+     * @param color
+     * @return
+     */
+    public static int pack(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24 |
+                (int) Math.round(color.getRed() * 255) << 16 |
+                (int) Math.round(color.getGreen() * 255) << 8 |
+                (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Turns a stored ARGB int back into a color
+     * @param argb
+     * @return
+     */
+    public static Color unpack(int argb) {
+        return Color.rgb((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, ((argb >>> 24) & 0xFF) / 255.0);
+    }
+
 
 }
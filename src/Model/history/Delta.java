@@ -0,0 +1,63 @@
+package Model.history;
+
+/**
+ * The difference between two versions of a note's text, as a single splice: keep the first keepPrefix
+ * characters and the last keepSuffix characters of the old text, and put insert between them.
+ *
+ * Saves are coalesced while the user types, so most saves change one stretch of the text and the splice
+ * is about as long as the edit itself.
+ */
+public class Delta {
+
+    /**
+     * How many characters at the start of the old text are kept
+     */
+    public final int keepPrefix;
+
+    /**
+     * How many characters at the end of the old text are kept
+     */
+    public final int keepSuffix;
+
+    /**
+     * The new text that goes between the kept start and end
+     */
+    public final String insert;
+
+    public Delta(int keepPrefix, int keepSuffix, String insert) {
+        this.keepPrefix = keepPrefix;
+        this.keepSuffix = keepSuffix;
+        this.insert = insert == null ? "" : insert;
+    }
+
+    /**
+     * Works out the splice that turns one text into another
+     * @param from The old text
+     * @param to The new text
+     * @return
+     */
+    public static Delta between(String from, String to) {
+        int max = Math.min(from.length(), to.length());
+
+        int prefix = 0;
+        while(prefix < max && from.charAt(prefix) == to.charAt(prefix))
+            prefix++;
+
+        //the suffix can't overlap the prefix in either text
+        int suffix = 0;
+        while(suffix < max - prefix &&
+                from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix))
+            suffix++;
+
+        return new Delta(prefix, suffix, to.substring(prefix, to.length() - suffix));
+    }
+
+    /**
+     * Applies the splice to the text it was worked out from
+     * @param from
+     * @return The new text
+     */
+    public String applyTo(String from) {
+        return from.substring(0, keepPrefix) + insert + from.substring(from.length() - keepSuffix);
+    }
+}
@@ -0,0 +1,70 @@
+package Model.history;
+
+import java.util.Date;
+
+/**
+ * One saved version of a note, as listed in its history. The text itself is not included; it is put back
+ * together from the revisions on demand.
+ */
+public class Revision {
+
+    /**
+     * The note this is a version of
+     */
+    public final long noteId;
+
+    /**
+     * The version's number. A note's first revision is 1, and each save that changes it adds one
+     */
+    public final int number;
+
+    /**
+     * When this version was saved, in milliseconds since the epoch
+     */
+    public final long dateSaved;
+
+    /**
+     * The note's title at this version
+     */
+    public final String title;
+
+    /**
+     * Whether this version is stored whole rather than as a change to the one before it
+     */
+    public final boolean checkpoint;
+
+    /**
+     * How many characters of text this version takes up in the history
+     */
+    public final int storedLength;
+
+    public Revision(long noteId, int number, long dateSaved, String title, boolean checkpoint, int storedLength) {
+        this.noteId = noteId;
+        this.number = number;
+        this.dateSaved = dateSaved;
+        this.title = title;
+        this.checkpoint = checkpoint;
+        this.storedLength = storedLength;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public Date getDateSaved() {
+        return new Date(dateSaved);
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public String toString() {
+        return "Revision " + number + " of note " + noteId + (checkpoint ? " (checkpoint)" : "");
+    }
+}
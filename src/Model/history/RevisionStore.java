@@ -0,0 +1,264 @@
+package Model.history;
+
+import Model.ReadConnectionPool;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Objects;
+
+/**
+ * Keeps the revision history of every note in the note_revisions table.
+ *
+ * Each save that changes a note adds a revision. Most revisions are stored as a Delta against the revision
+ * before them, so the history grows with what was edited rather than with the size of the note. Every so often
+ * a revision is stored whole as a checkpoint, and any revision is put back together from the checkpoint before it,
+ * so reading a revision never replays more than a checkpoint interval's worth of changes.
+ */
+public class RevisionStore {
+
+    public static final String TABLE_REVISIONS = "note_revisions";
+    private static final String COLUMN_NOTE_ID = "note_id";
+    private static final String COLUMN_REVISION = "revision";
+    private static final String COLUMN_BASE = "base";
+    private static final String COLUMN_DATE_SAVED = "dateSaved";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_KEEP_PREFIX = "keepPrefix";
+    private static final String COLUMN_KEEP_SUFFIX = "keepSuffix";
+    private static final String COLUMN_TEXT = "text";
+
+    /**
+     * Setting for the most revisions in a row that are stored as deltas before a checkpoint is stored
+     */
+    public static final String SETTING_CHECKPOINT_INTERVAL = "jot.history.checkpointInterval";
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 20;
+
+    /**
+     * The newest revision of a note, and the checkpoint it is built from
+     */
+    private static final String SQL_GET_LATEST = " SELECT " + COLUMN_REVISION + ", " + COLUMN_BASE +
+            " FROM " + TABLE_REVISIONS +
+            " WHERE " + COLUMN_NOTE_ID + " = ? " +
+            " ORDER BY " + COLUMN_REVISION + " DESC LIMIT 1 ";
+
+    private static final String SQL_INSERT = " INSERT INTO " + TABLE_REVISIONS + "( " +
+            COLUMN_NOTE_ID + ", " + COLUMN_REVISION + ", " + COLUMN_BASE + ", " + COLUMN_DATE_SAVED + ", " +
+            COLUMN_TITLE + ", " + COLUMN_KEEP_PREFIX + ", " + COLUMN_KEEP_SUFFIX + ", " + COLUMN_TEXT + " ) " +
+            " VALUES (?, ?, ?, ?, ?, ?, ?, ?) ";
+
+    private static final String SQL_DELETE = " DELETE FROM " + TABLE_REVISIONS + " WHERE " + COLUMN_NOTE_ID + " = ? ";
+
+    /**
+     * Every revision of a note, newest first, without their text
+     */
+    private static final String SQL_LIST = " SELECT " + COLUMN_NOTE_ID + ", " + COLUMN_REVISION + ", " + COLUMN_BASE + ", " +
+            COLUMN_DATE_SAVED + ", " + COLUMN_TITLE + ", length(" + COLUMN_TEXT + ") AS storedLength " +
+            " FROM " + TABLE_REVISIONS +
+            " WHERE " + COLUMN_NOTE_ID + " = ? ";
+
+    /**
+     * The revisions needed to put one revision back together: its checkpoint and every delta after it, in order
+     */
+    private static final String SQL_GET_CHAIN = " SELECT " + COLUMN_REVISION + ", " + COLUMN_KEEP_PREFIX + ", " +
+            COLUMN_KEEP_SUFFIX + ", " + COLUMN_TEXT +
+            " FROM " + TABLE_REVISIONS +
+            " WHERE " + COLUMN_NOTE_ID + " = ? " +
+            " AND " + COLUMN_REVISION + " >= (SELECT " + COLUMN_BASE + " FROM " + TABLE_REVISIONS +
+                " WHERE " + COLUMN_NOTE_ID + " = ? AND " + COLUMN_REVISION + " = ?) " +
+            " AND " + COLUMN_REVISION + " <= ? " +
+            " ORDER BY " + COLUMN_REVISION;
+
+    private final int checkpointInterval;
+
+    private final PreparedStatement latestStatement;
+    private final PreparedStatement insertStatement;
+    private final PreparedStatement deleteStatement;
+
+    /**
+     * @param connection The database's write connection. Only used inside its transactions. The table must already exist
+     * @param checkpointInterval The most revisions in a row that are stored as deltas
+     */
+    public RevisionStore(Connection connection, int checkpointInterval) throws SQLException {
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+
+        latestStatement = connection.prepareStatement(SQL_GET_LATEST);
+        insertStatement = connection.prepareStatement(SQL_INSERT);
+        deleteStatement = connection.prepareStatement(SQL_DELETE);
+    }
+
+    /**
+     * Creates the revisions table if it does not exist yet
+     * @param connection
+     */
+    public static void createTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE_REVISIONS + "(" +
+                    COLUMN_NOTE_ID +        " INTEGER NOT NULL, " +
+                    COLUMN_REVISION +       " INTEGER NOT NULL, " +
+                    COLUMN_BASE +           " INTEGER NOT NULL, " +
+                    COLUMN_DATE_SAVED +     " INTEGER NOT NULL, " +
+                    COLUMN_TITLE +          " TEXT, " +
+                    COLUMN_KEEP_PREFIX +    " INTEGER NOT NULL, " +
+                    COLUMN_KEEP_SUFFIX +    " INTEGER NOT NULL, " +
+                    COLUMN_TEXT +           " TEXT, " +
+                    " PRIMARY KEY (" + COLUMN_NOTE_ID + ", " + COLUMN_REVISION + ")" +
+                    ") WITHOUT ROWID");
+        }
+    }
+
+    /**
+     * Records a save of a note. Call it in the same transaction as the update, before the note's row changes.
+     * A save that doesn't change the title or text (moving, recoloring, opening) adds nothing.
+     *
+     * A note with no history yet first gets its current version recorded as revision 1, so the version
+     * being replaced can always be restored.
+     * @param noteId
+     * @param oldTitle The title in the database now
+     * @param oldText The text in the database now
+     * @param oldDateSaved When the version in the database now was saved
+     * @param title The title being saved
+     * @param text The text being saved
+     * @param dateSaved When the new version is being saved
+     */
+    public void record(long noteId, String oldTitle, String oldText, long oldDateSaved,
+                       String title, String text, long dateSaved) throws SQLException {
+        oldText = oldText == null ? "" : oldText;
+        text = text == null ? "" : text;
+
+        if(Objects.equals(oldTitle, title) && oldText.equals(text))
+            return;
+
+        int latest = 0;
+        int base = 0;
+
+        latestStatement.setLong(1, noteId);
+        try (ResultSet result = latestStatement.executeQuery()) {
+            if(result.next()) {
+                latest = result.getInt(COLUMN_REVISION);
+                base = result.getInt(COLUMN_BASE);
+            }
+        }
+
+        if(latest == 0) {
+            insert(noteId, 1, 1, oldDateSaved, oldTitle, new Delta(0, 0, oldText));
+            latest = 1;
+            base = 1;
+        }
+
+        int number = latest + 1;
+        Delta delta = Delta.between(oldText, text);
+
+        //start a new checkpoint when the chain is long enough, or when the change is most of the note anyway
+        if(number - base >= checkpointInterval || delta.insert.length() > text.length() / 2)
+            insert(noteId, number, number, dateSaved, title, new Delta(0, 0, text));
+        else
+            insert(noteId, number, base, dateSaved, title, delta);
+    }
+
+    private void insert(long noteId, int number, int base, long dateSaved, String title, Delta delta) throws SQLException {
+        insertStatement.setLong(1, noteId);
+        insertStatement.setInt(2, number);
+        insertStatement.setInt(3, base);
+        insertStatement.setLong(4, dateSaved);
+        insertStatement.setString(5, title);
+        insertStatement.setInt(6, delta.keepPrefix);
+        insertStatement.setInt(7, delta.keepSuffix);
+        insertStatement.setString(8, delta.insert);
+        insertStatement.executeUpdate();
+    }
+
+    /**
+     * Removes the history of deleted notes. Call it in the same transaction as the delete
+     * @param noteIds
+     */
+    public void deleteHistory(long[] noteIds) throws SQLException {
+        for(long id : noteIds) {
+            deleteStatement.setLong(1, id);
+            deleteStatement.addBatch();
+        }
+
+        deleteStatement.executeBatch();
+    }
+
+    /**
+     * Lists a note's revisions, newest first
+     * @param reader
+     * @param noteId
+     * @return
+     */
+    public static ArrayList<Revision> list(ReadConnectionPool.Reader reader, long noteId) throws SQLException {
+        ArrayList<Revision> revisions = new ArrayList<>();
+
+        PreparedStatement statement = reader.prepare(SQL_LIST + " ORDER BY " + COLUMN_REVISION + " DESC ");
+        statement.setLong(1, noteId);
+
+        try (ResultSet results = statement.executeQuery()) {
+            while(results.next())
+                revisions.add(getRevisionFromResultSet(results));
+        }
+
+        return revisions;
+    }
+
+    /**
+     * @param reader
+     * @param noteId
+     * @param number
+     * @return One of a note's revisions, or null if it has no such revision
+     */
+    public static Revision find(ReadConnectionPool.Reader reader, long noteId, int number) throws SQLException {
+        PreparedStatement statement = reader.prepare(SQL_LIST + " AND " + COLUMN_REVISION + " = ? ");
+        statement.setLong(1, noteId);
+        statement.setInt(2, number);
+
+        try (ResultSet results = statement.executeQuery()) {
+            return results.next() ? getRevisionFromResultSet(results) : null;
+        }
+    }
+
+    /**
+     * Puts the text of a revision back together from its checkpoint and the deltas after it
+     * @param reader
+     * @param noteId
+     * @param number
+     * @return The text, or null if the note has no such revision
+     */
+    public static String readText(ReadConnectionPool.Reader reader, long noteId, int number) throws SQLException {
+        PreparedStatement statement = reader.prepare(SQL_GET_CHAIN);
+        statement.setLong(1, noteId);
+        statement.setLong(2, noteId);
+        statement.setInt(3, number);
+        statement.setInt(4, number);
+
+        String text = null;
+
+        try (ResultSet results = statement.executeQuery()) {
+            while(results.next()) {
+                String insert = results.getString(COLUMN_TEXT);
+
+                //the first row is the checkpoint, which is stored whole
+                if(text == null)
+                    text = insert == null ? "" : insert;
+                else
+                    text = new Delta(results.getInt(COLUMN_KEEP_PREFIX), results.getInt(COLUMN_KEEP_SUFFIX), insert).applyTo(text);
+            }
+        }
+
+        return text;
+    }
+
+    private static Revision getRevisionFromResultSet(ResultSet results) throws SQLException {
+        int number = results.getInt(COLUMN_REVISION);
+
+        return new Revision(results.getLong(COLUMN_NOTE_ID),
+                number,
+                results.getLong(COLUMN_DATE_SAVED),
+                results.getString(COLUMN_TITLE),
+                results.getInt(COLUMN_BASE) == number,
+                results.getInt("storedLength"));
+    }
+}
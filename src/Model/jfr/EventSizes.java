@@ -0,0 +1,38 @@
+package Model.jfr;
+
+/**
+ * Sizes for events to carry. Only worth working out once an event is known to be recorded
+ */
+public class EventSizes {
+
+    private EventSizes() {
+    }
+
+    /**
+     * @param string
+     * @return How many bytes the string takes up as UTF-8, which is how SQLite stores it. Nothing is encoded to find out
+     */
+    public static int utf8Length(String string) {
+        if(string == null)
+            return 0;
+
+        int bytes = 0;
+
+        for(int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+
+            if(c < 0x80)
+                bytes += 1;
+            else if(c < 0x800)
+                bytes += 2;
+            else if(Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            }
+            else
+                bytes += 3;
+        }
+
+        return bytes;
+    }
+}
@@ -0,0 +1,20 @@
+package Model.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A brand new note inserted by Database.newNote()
+ */
+@Name("jot.NoteCreate")
+@Label("Note Create")
+@Category({"Jot", "Database"})
+@Description("A new, empty note inserted into the database")
+public class NoteCreateEvent extends Event {
+
+    @Label("Note Id")
+    public long noteId;
+}
@@ -0,0 +1,33 @@
+package Model.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One note written to the database, revision included. Notes the saver writes together each get their own
+ * event, which covers the note's own statements but not the commit they share
+ */
+@Name("jot.NoteSave")
+@Label("Note Save")
+@Category({"Jot", "Database"})
+@Description("A single note written to the database")
+public class NoteSaveEvent extends Event {
+
+    @Label("Note Id")
+    public long noteId;
+
+    @Label("Title Size")
+    @DataAmount
+    public int titleBytes;
+
+    @Label("Text Size")
+    @DataAmount
+    public int textBytes;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
@@ -0,0 +1,25 @@
+package Model.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Building a note window's controller, view and stage, on the JavaFX thread
+ */
+@Name("jot.NoteWindowBuild")
+@Label("Note Window Build")
+@Category({"Jot", "UI"})
+@Description("A NoteController and its window being built")
+public class NoteWindowBuildEvent extends Event {
+
+    @Label("Note Id")
+    public long noteId;
+
+    @Label("Text Size")
+    @DataAmount
+    public int textBytes;
+}
@@ -0,0 +1,20 @@
+package Model.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The notes list replacing every note it shows, on the JavaFX thread
+ */
+@Name("jot.NotesListUpdate")
+@Label("Notes List Update")
+@Category({"Jot", "UI"})
+@Description("The notes list being handed a new set of notes to show")
+public class NotesListUpdateEvent extends Event {
+
+    @Label("Rows")
+    public int rows;
+}
@@ -0,0 +1,32 @@
+package Model.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A query that reads a list of notes or summaries. The kind matches the query timings shown over JMX
+ */
+@Name("jot.NotesQuery")
+@Label("Notes Query")
+@Category({"Jot", "Database"})
+@Description("A read of a list of notes or note summaries")
+public class NotesQueryEvent extends Event {
+
+    @Label("Kind")
+    public String kind;
+
+    @Label("Query")
+    public String query;
+
+    @Label("Rows")
+    public int rows;
+
+    @Label("Text Size")
+    @Description("Bytes of text in the results: each note's text, or each summary's snippet")
+    @DataAmount
+    public long textBytes;
+}
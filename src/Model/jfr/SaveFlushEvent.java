@@ -0,0 +1,38 @@
+package Model.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * One run of the save buffer's flush on the saver thread
+ */
+@Name("jot.SaveFlush")
+@Label("Save Flush")
+@Category({"Jot", "Saving"})
+@Description("The save buffer writing its dirty notes to the database")
+public class SaveFlushEvent extends Event {
+
+    @Label("Notes")
+    public int notes;
+
+    @Label("Text Size")
+    @DataAmount
+    public long textBytes;
+
+    @Label("Oldest Change Age")
+    @Description("How long the oldest change in the flush had been waiting when the flush started")
+    @Timespan
+    public long oldestChangeAge;
+
+    @Label("Largest Note Id")
+    @Description("The note with the most text in the flush")
+    public long largestNoteId;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
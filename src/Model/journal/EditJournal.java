@@ -0,0 +1,276 @@
+package Model.journal;
+
+import Model.history.Delta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * An append-only log of note edits, kept in two memory-mapped files. An edit is acknowledged once it is appended,
+ * which is a copy into mapped memory rather than a database write, and it survives the application dying
+ * before the edit reaches the database.
+ *
+ * Edits are appended to the active segment. When the save buffer takes its pending notes to write them, the
+ * journal switches to the other segment, and once those notes are committed the segment that held them is
+ * emptied. Whatever is left in the segments at startup is replayed into the database.
+ *
+ * The first edit to a note in a segment holds the note's whole text. Later ones only hold a Delta against it.
+ */
+public class EditJournal {
+
+    /**
+     * Setting that turns the journal on
+     */
+    public static final String SETTING_ENABLED = "jot.journal.enabled";
+
+    /**
+     * Setting for how many bytes each of the journal's two files holds
+     */
+    public static final String SETTING_SEGMENT_SIZE = "jot.journal.segmentSize";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    private static final String FILE_NAME = "jot.journal";
+
+    private static final byte KIND_FULL = 0;
+    private static final byte KIND_DELTA = 1;
+
+    private final JournalSegment[] segments;
+
+    /**
+     * The segment edits are appended to
+     */
+    private JournalSegment active;
+
+    /**
+     * The text of each note as of its last edit in the active segment, so the next edit can be a Delta
+     */
+    private final HashMap<Long, String> journaledText = new HashMap<>();
+
+    /**
+     * Opens the journal's files, creating them if they don't exist
+     * @param directory
+     * @param segmentSize How many bytes each file holds
+     */
+    public EditJournal(File directory, int segmentSize) throws IOException {
+        segments = new JournalSegment[] {
+                new JournalSegment(new File(directory, FILE_NAME + ".0"), segmentSize),
+                new JournalSegment(new File(directory, FILE_NAME + ".1"), segmentSize)
+        };
+
+        //carry on in the newest segment that has anything in it. Its notes' next edits are written whole
+        active = segments[0];
+        for(JournalSegment segment : segments) {
+            if(!segment.isEmpty() && (active.isEmpty() || segment.getGeneration() > active.getGeneration()))
+                active = segment;
+        }
+    }
+
+    /**
+     * Appends the state of a note
+     * @return The generation of the segment the edit went to, or -1 if it wasn't journaled because the active
+     * segment is full until the next flush empties it
+     */
+    public synchronized long append(long noteId, long dateSaved, boolean open, int color, String title, String text) {
+        text = text == null ? "" : text;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeLong(noteId);
+            out.writeLong(dateSaved);
+            out.writeBoolean(open);
+            out.writeInt(color);
+            writeString(out, title);
+
+            String previous = journaledText.get(noteId);
+            Delta delta = previous == null ? null : Delta.between(previous, text);
+
+            if(delta != null && delta.insert.length() < text.length()) {
+                out.writeByte(KIND_DELTA);
+                out.writeInt(delta.keepPrefix);
+                out.writeInt(delta.keepSuffix);
+                writeString(out, delta.insert);
+            } else {
+                out.writeByte(KIND_FULL);
+                writeString(out, text);
+            }
+
+            out.flush();
+
+            if(!active.append(bytes.toByteArray()))
+                return -1;
+
+            journaledText.put(noteId, text);
+            return active.getGeneration();
+        } catch (IOException e) {
+            //a byte array never throws
+            e.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Switches to the other segment, so the edits journaled so far can be emptied out by compacted() once
+     * they are in the database. Called when the save buffer takes its pending notes, and when the active
+     * segment fills up.
+     * @return The generation of the segment edits are appended to from now on. Every edit appended before
+     * the call is in an older one, unless the segments couldn't be switched
+     */
+    public synchronized long rollover() {
+        //the other segment still holds edits from a flush that didn't make it, so keep both
+        if(!active.isEmpty() && other().isEmpty()) {
+            other().setGeneration(active.getGeneration() + 1);
+            active = other();
+            journaledText.clear();
+        }
+
+        return active.getGeneration();
+    }
+
+    /**
+     * Empties the segment that is not being appended to, if it is older than a generation. Called once the notes
+     * taken at a rollover() are committed. The active segment may have been switched again since, in which case
+     * the other one holds newer edits and is kept
+     * @param generation What rollover() returned before the notes were taken
+     */
+    public synchronized void compacted(long generation) {
+        if(other().getGeneration() < generation)
+            other().reset();
+    }
+
+    /**
+     * Reads every edit in the journal, oldest segment first
+     * @return The last state the journal holds for each note
+     */
+    public synchronized Collection<NoteEdit> readEdits() {
+        LinkedHashMap<Long, NoteEdit> edits = new LinkedHashMap<>();
+
+        JournalSegment[] ordered = Arrays.copyOf(segments, segments.length);
+        Arrays.sort(ordered, Comparator.comparingLong(JournalSegment::getGeneration));
+
+        for(JournalSegment segment : ordered) {
+            //deltas only ever refer to edits in the same segment
+            HashMap<Long, String> texts = new HashMap<>();
+
+            for(byte[] record : segment.readRecords()) {
+                try {
+                    NoteEdit edit = readEdit(record, texts);
+
+                    if(edit != null) {
+                        texts.put(edit.noteId, edit.text);
+                        edits.remove(edit.noteId);
+                        edits.put(edit.noteId, edit);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        return edits.values();
+    }
+
+    /**
+     * @return Whether neither segment holds any edits
+     */
+    public synchronized boolean isEmpty() {
+        return segments[0].isEmpty() && segments[1].isEmpty();
+    }
+
+    /**
+     * Empties both segments
+     */
+    public synchronized void reset() {
+        for(JournalSegment segment : segments)
+            segment.reset();
+
+        journaledText.clear();
+    }
+
+    /**
+     * Writes the segment being appended to out to its file, so its edits survive the machine going down
+     * and not just the application
+     */
+    public synchronized void force() {
+        active.force();
+    }
+
+    public synchronized void close() {
+        for(JournalSegment segment : segments)
+            segment.close();
+    }
+
+    private JournalSegment other() {
+        return active == segments[0] ? segments[1] : segments[0];
+    }
+
+    /**
+     * @param record
+     * @param texts Each note's text as of its last edit in the segment
+     * @return The edit, or null if it is a delta with nothing to apply it to
+     */
+    private static NoteEdit readEdit(byte[] record, HashMap<Long, String> texts) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        long noteId = in.readLong();
+        long dateSaved = in.readLong();
+        boolean open = in.readBoolean();
+        int color = in.readInt();
+        String title = readString(in);
+
+        String text;
+        if(in.readByte() == KIND_DELTA) {
+            Delta delta = new Delta(in.readInt(), in.readInt(), readString(in));
+            String previous = texts.get(noteId);
+
+            if(previous == null) {
+                System.out.println("Journaled edit to note " + noteId + " has no text to apply to.");
+                return null;
+            }
+
+            text = delta.applyTo(previous);
+        } else {
+            text = readString(in);
+        }
+
+        return new NoteEdit(noteId, dateSaved, open, color, title, text);
+    }
+
+    /**
+     * Strings are written as a byte count and UTF-8, since writeUTF() can't hold a long note
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if(string == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if(length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,172 @@
+package Model.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * One memory-mapped journal file. Records are appended one after another behind a small header. Each record is
+ * its length, a checksum and the record itself, and the log always ends with a zero length, so a reader knows
+ * where to stop. A record that was only partly written when the application died fails its checksum and ends the log.
+ */
+class JournalSegment {
+
+    /**
+     * "JOTJ", marks a file that has been set up as a segment
+     */
+    private static final int MAGIC = 0x4A4F544A;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Magic, format version and generation
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Length and checksum in front of every record
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Where the next record goes
+     */
+    private int position;
+
+    /**
+     * @param file
+     * @param size How many bytes to map. A file that is already bigger is mapped whole
+     */
+    JournalSegment(File file, int size) throws IOException {
+        this.file = file;
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel();
+
+        int mappedSize = (int) Math.max(size, Math.min(channel.size(), Integer.MAX_VALUE));
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putLong(8, 0);
+            buffer.putInt(HEADER_SIZE, 0);
+        }
+
+        //finds the end of the log
+        readRecords();
+    }
+
+    /**
+     * Reads every whole record in the segment, in the order they were appended
+     * @return
+     */
+    ArrayList<byte[]> readRecords() {
+        ArrayList<byte[]> records = new ArrayList<>();
+        int at = HEADER_SIZE;
+
+        while(at + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(at);
+
+            if(length <= 0 || at + RECORD_HEADER_SIZE + length > buffer.capacity())
+                break;
+
+            byte[] record = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(at + RECORD_HEADER_SIZE);
+            view.get(record);
+
+            //a torn write. Nothing after it was acknowledged
+            if(checksum(record) != buffer.getInt(at + 4)) {
+                System.out.println("Journal " + file.getName() + " ends with a partly written record.");
+                break;
+            }
+
+            records.add(record);
+            at += RECORD_HEADER_SIZE + length;
+        }
+
+        position = at;
+        return records;
+    }
+
+    /**
+     * Appends a record. The length is written last, so the record only becomes part of the log once
+     * everything else is in place
+     * @param record
+     * @return Whether there was room for it
+     */
+    boolean append(byte[] record) {
+        int end = position + RECORD_HEADER_SIZE + record.length;
+
+        //room for the record and the zero length after it
+        if(end + 4 > buffer.capacity())
+            return false;
+
+        ByteBuffer view = buffer.duplicate();
+        view.position(position + RECORD_HEADER_SIZE);
+        view.put(record);
+
+        buffer.putInt(end, 0);
+        buffer.putInt(position + 4, checksum(record));
+        buffer.putInt(position, record.length);
+
+        position = end;
+        return true;
+    }
+
+    /**
+     * Empties the segment
+     */
+    void reset() {
+        buffer.putInt(HEADER_SIZE, 0);
+        position = HEADER_SIZE;
+    }
+
+    boolean isEmpty() {
+        return position == HEADER_SIZE;
+    }
+
+    /**
+     * @return Which of the two segments was written to later. Only meaningful while the segment has records
+     */
+    long getGeneration() {
+        return buffer.getLong(8);
+    }
+
+    void setGeneration(long generation) {
+        buffer.putLong(8, generation);
+    }
+
+    /**
+     * Writes the mapped pages out to the file
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        force();
+
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,34 @@
+package Model.journal;
+
+/**
+ * The state of a note as the journal last recorded it
+ */
+public class NoteEdit {
+
+    public final long noteId;
+
+    /**
+     * When the edit was made, in milliseconds since the epoch
+     */
+    public final long dateSaved;
+
+    public final boolean open;
+
+    /**
+     * The note's color as a packed ARGB int
+     */
+    public final int color;
+
+    public final String title;
+
+    public final String text;
+
+    public NoteEdit(long noteId, long dateSaved, boolean open, int color, String title, String text) {
+        this.noteId = noteId;
+        this.dateSaved = dateSaved;
+        this.open = open;
+        this.color = color;
+        this.title = title;
+        this.text = text;
+    }
+}
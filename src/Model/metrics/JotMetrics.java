@@ -0,0 +1,92 @@
+package Model.metrics;
+
+import Model.NoteSaveExecutor;
+import Model.StartupTiming;
+
+import java.util.Map;
+
+/**
+ * Reads the metrics for JMX. The save buffer's counters are read from the buffer itself
+ */
+public class JotMetrics implements JotMetricsMXBean {
+
+    @Override
+    public int getSaveQueueDepth() {
+        return NoteSaveExecutor.getInstance().getPendingCount();
+    }
+
+    @Override
+    public long getSaveRequests() {
+        return NoteSaveExecutor.getInstance().getSaveRequests();
+    }
+
+    @Override
+    public long getWritesCoalesced() {
+        return NoteSaveExecutor.getInstance().getWritesCoalesced();
+    }
+
+    @Override
+    public long getNotesWritten() {
+        return NoteSaveExecutor.getInstance().getNotesWritten();
+    }
+
+    @Override
+    public long getFlushes() {
+        return NoteSaveExecutor.getInstance().getFlushes();
+    }
+
+    @Override
+    public LatencySummary getSaveLatency() {
+        return Metrics.SAVE_LATENCY.summarize();
+    }
+
+    @Override
+    public LatencySummary getFlushTime() {
+        return Metrics.FLUSH_TIME.summarize();
+    }
+
+    @Override
+    public Map<String, LatencySummary> getQueryLatency() {
+        return Metrics.getQueryLatencies();
+    }
+
+    @Override
+    public long getRowsDecoded() {
+        return Metrics.ROWS_DECODED.sum();
+    }
+
+    @Override
+    public long getRowsLive() {
+        return Metrics.ROWS_LIVE.sum();
+    }
+
+    @Override
+    public LatencySummary getPreviewBuildTime() {
+        return Metrics.PREVIEW_BUILD.summarize();
+    }
+
+    @Override
+    public LatencySummary getPreviewBindTime() {
+        return Metrics.PREVIEW_BIND.summarize();
+    }
+
+    @Override
+    public LatencySummary getWindowOpenTime() {
+        return Metrics.WINDOW_OPEN.summarize();
+    }
+
+    @Override
+    public Map<String, Long> getStartupStages() {
+        return StartupTiming.getStages();
+    }
+
+    @Override
+    public long getTimeToFirstWindow() {
+        return StartupTiming.getTimeToFirstWindow();
+    }
+
+    @Override
+    public void resetLatencies() {
+        Metrics.resetLatencies();
+    }
+}
@@ -0,0 +1,50 @@
+package Model.metrics;
+
+import java.util.Map;
+
+/**
+ * What Jot shows over JMX. Times are in microseconds unless they say otherwise
+ */
+public interface JotMetricsMXBean {
+
+    /**
+     * @return How many notes are waiting to be saved right now
+     */
+    int getSaveQueueDepth();
+
+    long getSaveRequests();
+
+    long getWritesCoalesced();
+
+    long getNotesWritten();
+
+    long getFlushes();
+
+    LatencySummary getSaveLatency();
+
+    LatencySummary getFlushTime();
+
+    Map<String, LatencySummary> getQueryLatency();
+
+    long getRowsDecoded();
+
+    long getRowsLive();
+
+    LatencySummary getPreviewBuildTime();
+
+    LatencySummary getPreviewBindTime();
+
+    LatencySummary getWindowOpenTime();
+
+    /**
+     * @return Each startup stage and when it was reached, in milliseconds since the JVM started
+     */
+    Map<String, Long> getStartupStages();
+
+    /**
+     * @return Milliseconds from the JVM starting to the first window showing
+     */
+    long getTimeToFirstWindow();
+
+    void resetLatencies();
+}
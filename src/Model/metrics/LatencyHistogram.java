@@ -0,0 +1,131 @@
+package Model.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how long something takes, in nanoseconds, without taking a lock. Durations are counted in buckets
+ * that split every power of two into four, so a percentile read from it is within a quarter of the real value.
+ * That is plenty to see a regression, and recording a duration is a couple of atomic adds.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 4;
+
+    /**
+     * Enough buckets for any non-negative long
+     */
+    private static final int BUCKETS = SUB_BUCKETS + (62 - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration
+     * @param nanos
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Records the time since a System.nanoTime() reading
+     * @param startNanos
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return The durations recorded so far. Durations recorded while it is being read may be left out
+     */
+    public LatencySummary summarize() {
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+
+        for(int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            recorded += counts[i];
+        }
+
+        //a bucket's upper bound can be past the longest duration actually in it
+        long longest = max.get();
+
+        return new LatencySummary(recorded,
+                recorded == 0 ? 0 : total.sum() / recorded,
+                Math.min(longest, percentile(counts, recorded, 0.50)),
+                Math.min(longest, percentile(counts, recorded, 0.95)),
+                Math.min(longest, percentile(counts, recorded, 0.99)),
+                longest);
+    }
+
+    /**
+     * @return How many durations have been recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Forgets every duration recorded so far
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++)
+            buckets.set(i, 0);
+
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * @return The most a duration in the bucket the fraction falls in could be
+     */
+    private static long percentile(long[] counts, long recorded, double fraction) {
+        if(recorded == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(recorded * fraction);
+        long seen = 0;
+
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if(seen >= rank)
+                return upperBoundOf(i);
+        }
+
+        return upperBoundOf(counts.length - 1);
+    }
+
+    private static int bucketOf(long nanos) {
+        if(nanos < SUB_BUCKETS)
+            return (int) nanos;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) - SUB_BUCKETS;
+
+        return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if(bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 2;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+    }
+}
@@ -0,0 +1,60 @@
+package Model.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long something has taken, as read from a LatencyHistogram. Shown over JMX as a composite value,
+ * with every time in microseconds.
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p95Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+    public LatencySummary(long count, long meanNanos, long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p95Nanos = p95Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return toMicros(meanNanos);
+    }
+
+    public long getP50Micros() {
+        return toMicros(p50Nanos);
+    }
+
+    public long getP95Micros() {
+        return toMicros(p95Nanos);
+    }
+
+    public long getP99Micros() {
+        return toMicros(p99Nanos);
+    }
+
+    public long getMaxMicros() {
+        return toMicros(maxNanos);
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return count + " recorded, mean " + getMeanMicros() + " us, p50 " + getP50Micros() + " us, p95 " +
+                getP95Micros() + " us, p99 " + getP99Micros() + " us, max " + getMaxMicros() + " us";
+    }
+}
@@ -0,0 +1,116 @@
+package Model.metrics;
+
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings for the things that make Jot feel slow: saving, querying, and building previews and
+ * windows. Recording one is a few atomic adds, so they are always on. They are read over JMX, as
+ * Jot:type=Metrics, so a running instance can be watched with jconsole or any other JMX client.
+ *
+ * Time a piece of work by taking System.nanoTime() before it and handing that to recordSince() after it.
+ */
+public class Metrics {
+
+    /**
+     * From the oldest queued change in a flush to that flush being committed
+     */
+    public static final LatencyHistogram SAVE_LATENCY = new LatencyHistogram();
+
+    /**
+     * Writing one flush of the save buffer to the database
+     */
+    public static final LatencyHistogram FLUSH_TIME = new LatencyHistogram();
+
+    /**
+     * Building a note preview for the notes list
+     */
+    public static final LatencyHistogram PREVIEW_BUILD = new LatencyHistogram();
+
+    /**
+     * Showing a different note in a preview that already exists, as the notes list scrolls or a note changes
+     */
+    public static final LatencyHistogram PREVIEW_BIND = new LatencyHistogram();
+
+    /**
+     * Building and showing a note window
+     */
+    public static final LatencyHistogram WINDOW_OPEN = new LatencyHistogram();
+
+    /**
+     * Database rows turned into new note or summary objects
+     */
+    public static final LongAdder ROWS_DECODED = new LongAdder();
+
+    /**
+     * Database rows answered by a note that was already live, so the rest of the row wasn't read
+     */
+    public static final LongAdder ROWS_LIVE = new LongAdder();
+
+    /**
+     * Query timings by kind of query
+     */
+    private static final ConcurrentHashMap<String, LatencyHistogram> queries = new ConcurrentHashMap<>();
+
+    private static final String OBJECT_NAME = "Jot:type=Metrics";
+
+    private static boolean registered;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param type The kind of query, like "search" or "openNotes"
+     * @return The timings for a kind of query
+     */
+    public static LatencyHistogram query(String type) {
+        return queries.computeIfAbsent(type, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return The timings of every kind of query run so far, by kind
+     */
+    public static Map<String, LatencySummary> getQueryLatencies() {
+        TreeMap<String, LatencySummary> latencies = new TreeMap<>();
+
+        for(Map.Entry<String, LatencyHistogram> entry : queries.entrySet())
+            latencies.put(entry.getKey(), entry.getValue().summarize());
+
+        return latencies;
+    }
+
+    /**
+     * Forgets every timing recorded so far, such as before repeating something to measure it
+     */
+    public static void resetLatencies() {
+        SAVE_LATENCY.reset();
+        FLUSH_TIME.reset();
+        PREVIEW_BUILD.reset();
+        PREVIEW_BIND.reset();
+        WINDOW_OPEN.reset();
+
+        for(LatencyHistogram histogram : queries.values())
+            histogram.reset();
+    }
+
+    /**
+     * Makes the metrics readable over JMX. Only the first call does anything
+     */
+    public static synchronized void register() {
+        if(registered)
+            return;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new JotMetrics(), new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (Exception e) {
+            System.out.println("Unable to publish metrics over JMX.");
+            e.printStackTrace();
+        }
+    }
+}
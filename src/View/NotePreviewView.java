@@ -0,0 +1,64 @@
+package View;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.layout.AnchorPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+/**
+ * The view of a single note preview on the notes list, built in code. Same layout as NotePreview.fxml,
+ * without parsing the FXML and reflecting over the controller every time a preview is made.
+ */
+public class NotePreviewView extends AnchorPane {
+
+    /**
+     * Represents the background of the note preview
+     */
+    private final VBox background = new VBox();
+
+    /**
+     * Displays the note's title
+     */
+    private final Label titleLabel = new Label("Title");
+
+    /**
+     * Displays the note's content
+     */
+    private final Label textLabel = new Label("Text");
+
+    NotePreviewView() {
+        background.setMinSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        background.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        background.setPrefSize(200, 200);
+        background.getStyleClass().add("background");
+        background.getStylesheets().add(ViewFactory.getStylesheet());
+        AnchorPane.setTopAnchor(background, 6.0);
+        AnchorPane.setRightAnchor(background, 6.0);
+        AnchorPane.setBottomAnchor(background, 6.0);
+        AnchorPane.setLeftAnchor(background, 6.0);
+
+        HBox topBar = new HBox(titleLabel);
+        topBar.setPrefHeight(20);
+        topBar.getStyleClass().add("topbar");
+        VBox.setMargin(topBar, new Insets(0, 0, 4, 0));
+
+        textLabel.setWrapText(true);
+
+        background.getChildren().addAll(topBar, textLabel);
+        getChildren().add(background);
+    }
+
+    public VBox getBackgroundBox() {
+        return background;
+    }
+
+    public Label getTitleLabel() {
+        return titleLabel;
+    }
+
+    public Label getTextLabel() {
+        return textLabel;
+    }
+}
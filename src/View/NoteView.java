@@ -0,0 +1,110 @@
+package View;
+
+import javafx.geometry.Insets;
+import javafx.scene.control.Button;
+import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+/**
+ * The view of a note window, built in code. Same layout as Note.fxml, without parsing the FXML and
+ * reflecting over the controller every time a window is opened. The controller hooks up its own event handlers.
+ */
+public class NoteView extends VBox {
+
+    /**
+     * Creates a new note
+     */
+    private final Button addButton = new Button();
+
+    /**
+     * What the note is called
+     */
+    private final TextField titleField = new TextField();
+
+    /**
+     * The button that we can click and drag on to move the window
+     */
+    private final Button dragButton = new Button();
+
+    /**
+     * Closes the note window
+     */
+    private final Button closeButton = new Button();
+
+    /**
+     * The main body of the note
+     */
+    private final TextArea contentArea = new TextArea();
+
+    NoteView() {
+        setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+        setMinWidth(400);
+        setPrefSize(600, 400);
+        getStyleClass().add("background");
+        getStylesheets().add(ViewFactory.getStylesheet());
+
+        configureIconButton(addButton, ViewFactory.getAddImage());
+        configureIconButton(dragButton, ViewFactory.getDragImage());
+        configureIconButton(closeButton, ViewFactory.getExitImage());
+        HBox.setMargin(closeButton, new Insets(0));
+
+        titleField.setPrefSize(200, 25);
+        HBox.setHgrow(titleField, Priority.ALWAYS);
+        HBox.setMargin(titleField, new Insets(4, 0, 0, 0));
+
+        HBox topBar = new HBox(addButton, titleField, dragButton, closeButton);
+        topBar.setId("topbar");
+        topBar.setPrefWidth(200);
+        topBar.getStyleClass().add("topbar");
+        topBar.setPadding(new Insets(4, 0, 0, 0));
+
+        contentArea.setPrefSize(200, 200);
+        contentArea.setWrapText(true);
+        VBox.setVgrow(contentArea, Priority.ALWAYS);
+        VBox.setMargin(contentArea, new Insets(0, 12, 12, 12));
+
+        getChildren().addAll(topBar, contentArea);
+    }
+
+    /**
+     * Gives a top bar button its icon
+     * @param button
+     * @param image
+     */
+    private static void configureIconButton(Button button, Image image) {
+        ImageView icon = new ImageView(image);
+        icon.setFitWidth(24);
+        icon.setFitHeight(24);
+        icon.setPickOnBounds(true);
+        icon.setPreserveRatio(true);
+
+        button.setMnemonicParsing(false);
+        button.setGraphic(icon);
+    }
+
+    public Button getAddButton() {
+        return addButton;
+    }
+
+    public TextField getTitleField() {
+        return titleField;
+    }
+
+    public Button getDragButton() {
+        return dragButton;
+    }
+
+    public Button getCloseButton() {
+        return closeButton;
+    }
+
+    public TextArea getContentArea() {
+        return contentArea;
+    }
+}
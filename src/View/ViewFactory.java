@@ -0,0 +1,92 @@
+package View;
+
+import javafx.scene.image.Image;
+
+/**
+ * Builds the views that are made over and over: note previews and note windows. They are built in code
+ * instead of being loaded from FXML, which saves re-parsing the same file and resolving the controller with
+ * reflection on every instance. The images and stylesheet they use are loaded once and shared.
+ *
+ * Note.fxml and NotePreview.fxml still describe the same layouts, so they can be opened in Scene Builder.
+ * A change to one of them has to be made to the matching view class as well.
+ *
+ * Must be used on the FX application thread.
+ */
+public class ViewFactory {
+
+    private static String stylesheet;
+
+    private static Image addImage;
+    private static Image dragImage;
+    private static Image exitImage;
+    private static Image iconImage;
+
+    private ViewFactory() {
+    }
+
+    /**
+     * @return A new, empty note preview
+     */
+    public static NotePreviewView createNotePreview() {
+        return new NotePreviewView();
+    }
+
+    /**
+     * @return A new, empty note window view
+     */
+    public static NoteView createNote() {
+        return new NoteView();
+    }
+
+    /**
+     * @return The url of the app's stylesheet
+     */
+    public static String getStylesheet() {
+        if(stylesheet == null)
+            stylesheet = ViewFactory.class.getResource("/Style/style.css").toExternalForm();
+
+        return stylesheet;
+    }
+
+    /**
+     * @return The window icon, shared by every window
+     */
+    public static Image getIconImage() {
+        if(iconImage == null)
+            iconImage = loadImage("icon.png");
+
+        return iconImage;
+    }
+
+    /**
+     * @return The splash screen shown while Jot starts. It is only shown once, so it isn't kept
+     */
+    public static Image getSplashImage() {
+        return loadImage("splash.png");
+    }
+
+    static Image getAddImage() {
+        if(addImage == null)
+            addImage = loadImage("add.png");
+
+        return addImage;
+    }
+
+    static Image getDragImage() {
+        if(dragImage == null)
+            dragImage = loadImage("drag.png");
+
+        return dragImage;
+    }
+
+    static Image getExitImage() {
+        if(exitImage == null)
+            exitImage = loadImage("exit.png");
+
+        return exitImage;
+    }
+
+    private static Image loadImage(String name) {
+        return new Image(ViewFactory.class.getResource("/Content/" + name).toExternalForm());
+    }
+}
@@ -4,18 +4,17 @@ import Model.Note;
 import Model.NoteControllerHost;
 import Model.NoteSaveListener;
 import Model.WindowManager;
-import View.ViewLoader;
+import Model.jfr.EventSizes;
+import Model.jfr.NoteWindowBuildEvent;
+import View.NoteView;
+import View.ViewFactory;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.fxml.Initializable;
 import javafx.scene.Cursor;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
@@ -23,11 +22,7 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.stage.WindowEvent;
 
-import java.io.IOException;
-import java.net.URL;
-import java.util.ResourceBundle;
-
-public class NoteController implements Initializable, ColorMenu.ColorMenuListener, WindowManager.Window{
+public class NoteController implements ColorMenu.ColorMenuListener, WindowManager.Window{
 
     public static final int MINIMUM_WIDTH = 255;
     public static final int MINIMUM_HEIGHT = 125;
@@ -50,25 +45,21 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
     /**
      * The root view of the note window
      */
-    @FXML
     private VBox rootView;
 
     /**
      * The main body of the note
      */
-    @FXML
     private TextArea taNoteContent;
 
     /**
      * What the note is called
      */
-    @FXML
     private TextField tfNoteTitle;
 
     /**
      * The button that we can click and drag on to move the window
      */
-    @FXML
     private Button bDrag;
 
     /**
@@ -88,60 +79,95 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
      */
     private static boolean globalClose = false;
 
+    /**
+     * Set when my window is closing because my note was deleted, so closing it doesn't save the note again
+     */
+    private boolean noteDeleted = false;
+
     /**
      * The context menu that shows
      */
     private ColorMenu colorMenu = new ColorMenu(this);
 
     public NoteController(Note note, NoteControllerHost host) {
-        try {
-            this.setHost(host);
-
-            FXMLLoader loader = new FXMLLoader(ViewLoader.class.getResource("Note.fxml"));
-            loader.setController(this);
-            rootView = loader.load();
-
-            setStage(new Stage(StageStyle.TRANSPARENT));
-            getStage().setScene(new Scene(rootView, 400,300));
-            getStage().getIcons().add(new Image("Content/icon.png"));
-
-            setNote(note);
-
-            //Configure the events that tell the note when it is opened or closed
-            getStage().addEventHandler(WindowEvent.WINDOW_SHOWN, event ->  {
-                openNotes++;
-                this.getNote().setOpen(true);
-
-                //TODO: This is a hack to get around crashes on global close. It should be fixed asap
-                noteSaveListener.noteChanged(this.getNote());
-            });
-
-            //we only set the note's save flag during a NON-GLOBAL close. If the whole application is shutting down,
-            //we want to start the same way as when it was exited, so don't change the note's open flag
-            getStage().addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> {
-                openNotes--;
-
-                //If we are NOT global closing and I am NOT the last open note or the Note List is showing,
-                //I should save my closed state. If any of those are true, I should not save-- I want to re-open
-                //on application restart
-                if(!globalClose && (openNotes != 0 || getHost().isNotesListShowing())) {
-                    this.getNote().setOpen(false);
-                    //TODO: This is a hack to get around the crashes on a global close. IT SHOULD BE FIXED STAT.
-                    //The saving mechanism itself should be re-worked to not cause issues on shutdown
-                    noteSaveListener.noteChanged(note);
-                }
-            });
-        }
-        catch (IOException e) {
-            System.out.println("Error instantiating Note Controller: " );
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+        NoteWindowBuildEvent buildEvent = new NoteWindowBuildEvent();
+        buildEvent.begin();
+
+        this.setHost(host);
+
+        NoteView view = ViewFactory.createNote();
+        rootView = view;
+        tfNoteTitle = view.getTitleField();
+        taNoteContent = view.getContentArea();
+        bDrag = view.getDragButton();
+        hookUpViewEvents(view);
+
+        taNoteContent.setContextMenu(colorMenu);
+
+        setStage(new Stage(StageStyle.TRANSPARENT));
+        getStage().setScene(new Scene(rootView, 400,300));
+        getStage().getIcons().add(ViewFactory.getIconImage());
+
+        setNote(note);
+
+        //Configure the events that tell the note when it is opened or closed
+        getStage().addEventHandler(WindowEvent.WINDOW_SHOWN, event ->  {
+            openNotes++;
+            this.getNote().setOpen(true);
+
+            //TODO: This is a hack to get around crashes on global close. It should be fixed asap
+            noteSaveListener.noteChanged(this.getNote());
+        });
+
+        //we only set the note's save flag during a NON-GLOBAL close. If the whole application is shutting down,
+        //we want to start the same way as when it was exited, so don't change the note's open flag
+        getStage().addEventHandler(WindowEvent.WINDOW_HIDDEN, event -> {
+            openNotes--;
+
+            //If we are NOT global closing and I am NOT the last open note or the Note List is showing,
+            //I should save my closed state. If any of those are true, I should not save-- I want to re-open
+            //on application restart
+            //A deleted note has nothing left to save its closed state to
+            if(!globalClose && !noteDeleted && (openNotes != 0 || getHost().isNotesListShowing())) {
+                this.getNote().setOpen(false);
+                //TODO: This is a hack to get around the crashes on a global close. IT SHOULD BE FIXED STAT.
+                //The saving mechanism itself should be re-worked to not cause issues on shutdown
+                noteSaveListener.noteChanged(note);
+            }
+        });
+
+        buildEvent.end();
+        if(buildEvent.shouldCommit()) {
+            buildEvent.noteId = note.id;
+            buildEvent.textBytes = EventSizes.utf8Length(note.getText());
+            buildEvent.commit();
         }
     }
 
-    @Override
-    public void initialize(URL location, ResourceBundle resources) {
-        taNoteContent.setContextMenu(colorMenu);
+    /**
+     * Connects the view's mouse and button events to my handlers
+     * @param view
+     */
+    private void hookUpViewEvents(NoteView view) {
+        //the root view handles resizing and dragging the window
+        rootView.setOnMouseDragged(this::onMouseDragged);
+        rootView.setOnMouseExited(this::onMouseExit);
+        rootView.setOnMouseMoved(this::onMouseMoved);
+        rootView.setOnMousePressed(this::onMouseDragStarted);
+
+        //the drag button moves the window too
+        bDrag.setOnMouseDragged(this::onMouseDragged);
+        bDrag.setOnMousePressed(this::onMouseDragStarted);
+
+        view.getAddButton().setOnAction(event -> addNewNote());
+        view.getCloseButton().setOnAction(event -> closeStage());
+
+        //mouse moves over anything but the root view reset the resize cursor
+        bDrag.setOnMouseMoved(this::onMouseMoved);
+        view.getAddButton().setOnMouseMoved(this::onMouseMoved);
+        view.getCloseButton().setOnMouseMoved(this::onMouseMoved);
+        tfNoteTitle.setOnMouseMoved(this::onMouseMoved);
+        taNoteContent.setOnMouseMoved(this::onMouseMoved);
     }
 
     /**
@@ -200,6 +226,15 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
         getStage().close();
     }
 
+    /**
+     * Closes my window because my note was deleted, without saving the note's closed state
+     */
+    @Override
+    public void closeDeleted() {
+        noteDeleted = true;
+        getStage().close();
+    }
+
     /**
      * The distance the mouse must be from the border of a window
      * to allow resizing
@@ -221,7 +256,6 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
      * Detects whether the mouse is close enough to the horizontal vertical edges to
      * show the resize cursor
      */
-    @FXML
     private void onMouseMoved(MouseEvent event) {
 
         //only a mouse move over of the root view (ie: not text box, buttons, etc)
@@ -253,7 +287,6 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
      * Detects when the mouse leaves the window
      * @param event
      */
-    @FXML
     private void onMouseExit(MouseEvent event) {
         //horizontalEdge = false;
         //verticalEdge = false;
@@ -268,7 +301,6 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
      * Sets the drag delta's initial ever
      * @param event
      */
-    @FXML
     private void onMouseDragStarted(MouseEvent event) {
         dragDelta.X = event.getSceneX();
         dragDelta.Y = event.getSceneY();
@@ -276,7 +308,6 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
 
     private long mouseMoves = 0;
 
-    @FXML
     private void onMouseDragged(MouseEvent event) {
 
         //if we are reszing X & Y coordinates, the size should be equal to the difference
@@ -304,12 +335,10 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
      * Calls my listener (typically a NotesManager object) and tells it
      * to add a new note.
      */
-    @FXML
     private void addNewNote() {
         getHost().createNote();
     }
 
-    @FXML
     private void changeName() {
         getNote().setTitle(tfNoteTitle.getText());
     }
@@ -333,7 +362,6 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
     /**
      * Shows the master note window, if it is not currently showing. Brings to front if otherwise.
      */
-    @FXML
     private void showNotesList() {
         host.showNotesList();
     }
@@ -365,6 +393,24 @@ public class NoteController implements Initializable, ColorMenu.ColorMenuListene
         noteSaveListener = new NoteSaveListener(this.note);
     }
 
+    /**
+     * Shows my note's title, text and color again after they were changed somewhere other than this window,
+     * without treating it as an edit
+     */
+    @Override
+    public void reloadNote() {
+        setColorStyle(note.getColor());
+
+        taNoteContent.textProperty().removeListener(noteContentListener);
+        tfNoteTitle.textProperty().removeListener(noteTitleListener);
+
+        taNoteContent.setText(note.getText());
+        tfNoteTitle.setText(note.getTitle());
+
+        taNoteContent.textProperty().addListener(noteContentListener);
+        tfNoteTitle.textProperty().addListener(noteTitleListener);
+    }
+
     /**
      * Sets the flag for global close, so windows know whether or not just their window was closed,
      * or the whole application-- since they handle those two cases differently.
@@ -1,10 +1,10 @@
 package controller;
 
-import Model.Note;
+import Model.NoteSummary;
 import Model.color.ColorPack;
-import View.ViewLoader;
-import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
+import Model.metrics.Metrics;
+import View.NotePreviewView;
+import View.ViewFactory;
 import javafx.scene.Parent;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
@@ -13,34 +13,31 @@ import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 
-import java.io.IOException;
-
 /**
  * Created by DanDan on 5/24/2016.
  */
-public class NotePreviewController implements  Note.NoteListener {
+public class NotePreviewController {
 
-    private Note note;
+    /**
+     * The summary of the note I'm showing
+     */
+    private NoteSummary summary;
 
     /**
      * TextField that dislpays the note's title
      */
-    @FXML
     private Label tfTitle;
 
     /**
      * Text field that displays the note's content
      */
-    @FXML
     private Label tfText;
 
     /**
      * VBox that represents the background of the note preview
      */
-    @FXML
     private Parent root;
 
-    @FXML
     private VBox vbBackground;
 
     /**
@@ -52,28 +49,24 @@ public class NotePreviewController implements  Note.NoteListener {
 
     /**
      * Creates a new note controller and sets its values per a specific note
-     * @param note
+     * @param summary
      */
-    public NotePreviewController(Note note, NotePreviewListener listener) {
-        try {
-            FXMLLoader loader = new FXMLLoader(ViewLoader.class.getResource("NotePreview.fxml"));
-            loader.setController(this);
-            loader.load();
+    public NotePreviewController(NoteSummary summary, NotePreviewListener listener) {
+        long start = System.nanoTime();
+        this.listener = listener;
 
-            root.setOnMouseClicked(event -> onClick(event));
+        NotePreviewView view = ViewFactory.createNotePreview();
+        root = view;
+        vbBackground = view.getBackgroundBox();
+        tfTitle = view.getTitleLabel();
+        tfText = view.getTextLabel();
 
-            setNote(note);
-        }
-        catch (IOException e) {
-            System.out.println("There was an error loading a note preview.");
-            System.out.println(e.getMessage());
-            e.printStackTrace();
-        } finally {
-            this.listener = listener;
-        }
+        root.setOnMouseClicked(event -> onClick(event));
+
+        showSummary(summary);
+        Metrics.PREVIEW_BUILD.recordSince(start);
     }
 
-    @FXML
     private void onClick(MouseEvent event) {
 
         //if we were just clicked once, toggle whether or not
@@ -84,27 +77,41 @@ public class NotePreviewController implements  Note.NoteListener {
         //if I was double clicked, force the listener to show me in a full note window
         //and leave me selected
         else if(event.getClickCount() == 2) {
-            listener.showNote(getNote());
+            listener.showNote(getSummary());
 
             //we do not get selected after a double click-- only opened
             //setSelected(true);
         }
     }
 
-    public void setNote(Note note) {
-        if(this.note != null)
-            this.note.removeListener(this);
+    /**
+     * Shows a note in this preview. Previews are reused for different notes as the grid scrolls,
+     * and are handed a new summary whenever their note changes, so the selection is taken from the
+     * listener rather than kept from the last summary.
+     * @param summary
+     */
+    public void setSummary(NoteSummary summary) {
+        long start = System.nanoTime();
+        showSummary(summary);
+        Metrics.PREVIEW_BIND.recordSince(start);
+    }
 
-        this.note = note;
+    /**
+     * Fills the preview in from a summary. Timed by whoever calls it, as a build or a rebind
+     * @param summary
+     */
+    private void showSummary(NoteSummary summary) {
+        this.summary = summary;
 
-        if(this.note != null)
-            this.note.addListener(this);
+        tfTitle.setText(summary.getTitle());
+        tfText.setText(summary.getSnippet());
+        setColorStyle(summary.getColor());
 
-        noteChanged(this.note);
+        showSelected(listener.isNoteSelected(summary));
     }
 
-    public Note getNote() {
-        return this.note;
+    public NoteSummary getSummary() {
+        return this.summary;
     }
 
     /**
@@ -115,18 +122,6 @@ public class NotePreviewController implements  Note.NoteListener {
         return root;
     }
 
-    /**
-     * When the title of my note changes
-     * @param note
-     */
-    @Override
-    public void noteChanged(Note note) {
-
-        tfTitle.setText(note.getTitle());
-        tfText.setText(note.getText());
-        setColorStyle(note.getColor());
-    }
-
     private void setColorStyle(Color color ) {
         vbBackground.setStyle("-fx-background-color: rgb(" +
                 (255.0 * color.getRed()) + "," +
@@ -141,6 +136,16 @@ public class NotePreviewController implements  Note.NoteListener {
     }
 
     public void setSelected(boolean selected) {
+        showSelected(selected);
+
+        listener.setNoteSelected(this.getSummary(), isSelected());
+    }
+
+    /**
+     * Draws or hides the selection box without notifying the listener
+     * @param selected
+     */
+    private void showSelected(boolean selected) {
         this.selected = selected;
 
         //if we are not selected, the selection box will not be drawn
@@ -156,8 +161,6 @@ public class NotePreviewController implements  Note.NoteListener {
                         (30) + "," +
                         alpha +
                         ")"));
-
-        listener.setNoteSelected(this.getNote(), isSelected());
     }
 
 
@@ -172,15 +175,22 @@ public class NotePreviewController implements  Note.NoteListener {
 
         /**
          * Notifies the listener that my note should be shown
-         * @param note
+         * @param summary
          */
-        void showNote(Note note);
+        void showNote(NoteSummary summary);
 
         /**
          * Notifies the listener when I'm selected or deselected
-         * @param note
+         * @param summary
          * @param selected
          */
-        void setNoteSelected(Note note, boolean selected);
+        void setNoteSelected(NoteSummary summary, boolean selected);
+
+        /**
+         * Asks the listener whether a note is selected, so a reused preview can draw its selection
+         * @param summary
+         * @return
+         */
+        boolean isNoteSelected(NoteSummary summary);
     }
 }
@@ -0,0 +1,376 @@
+package controller;
+
+import Model.NoteSummary;
+import javafx.collections.ObservableListBase;
+import javafx.geometry.Insets;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A virtualized grid of note previews. The notes are laid out in rows as wide as the grid allows, and the
+ * rows are shown by a ListView, so only the rows that fit on screen have preview nodes. Those nodes are
+ * recycled for other notes as the grid scrolls, which keeps the number of live previews and the cost of
+ * a reload the same no matter how many notes are being shown.
+ *
+ * The grid shows NoteSummary rows, so the full text of a note is never loaded just to preview it.
+ */
+public class NotePreviewGrid extends ListView<List<NoteSummary>> {
+
+    /**
+     * The size of a single preview, including its selection border
+     */
+    public static final double PREVIEW_WIDTH = 212;
+    public static final double PREVIEW_HEIGHT = 212;
+
+    /**
+     * Space between previews and around the edge of the grid
+     */
+    private static final double GAP = 8;
+
+    /**
+     * Room left for the vertical scroll bar when working out how many previews fit in a row
+     */
+    private static final double SCROLL_BAR_ALLOWANCE = 20;
+
+    /**
+     * How close to the last row the grid has to scroll before it asks for more notes
+     */
+    private static final int NEAR_END_ROWS = 2;
+
+    /**
+     * Every note in the grid, in order
+     */
+    private SummarySequence notes = new SummarySequence();
+
+    /**
+     * The grid's rows, worked out from notes whenever a row is asked for
+     */
+    private final Rows rows = new Rows();
+
+    /**
+     * How many previews fit in a row at the grid's current width
+     */
+    private int columns = 1;
+
+    /**
+     * The listener every preview in the grid reports clicks and selection to
+     */
+    private NotePreviewController.NotePreviewListener previewListener;
+
+    /**
+     * Told when the last rows of the grid come on screen, so more notes can be read before they are reached
+     */
+    private Runnable onNearEnd;
+
+    public NotePreviewGrid() {
+        getStyleClass().add("note-preview-grid");
+        getStylesheets().add(NotePreviewGrid.class.getResource("/Style/style.css").toExternalForm());
+
+        //every row is the same height, which lets the ListView skip measuring them
+        setFixedCellSize(PREVIEW_HEIGHT + GAP);
+        setCellFactory(list -> new RowCell());
+        setPlaceholder(new Label("Nothing to show. Create a new note?"));
+        setItems(rows);
+
+        //re-flow the notes into rows whenever the number that fit across changes
+        widthProperty().addListener((observable, oldWidth, newWidth) -> {
+            int newColumns = computeColumns(newWidth.doubleValue());
+
+            if(newColumns != columns) {
+                List<List<NoteSummary>> oldRows = rows.copy(0);
+                columns = newColumns;
+                rows.reset(oldRows);
+            }
+        });
+    }
+
+    public void setPreviewListener(NotePreviewController.NotePreviewListener previewListener) {
+        this.previewListener = previewListener;
+    }
+
+    public void setOnNearEnd(Runnable onNearEnd) {
+        this.onNearEnd = onNearEnd;
+    }
+
+    /**
+     * @return How many notes the grid is showing
+     */
+    public int getNoteCount() {
+        return notes.size();
+    }
+
+    /**
+     * @param index
+     * @return The note at a position in the grid
+     */
+    public NoteSummary getNote(int index) {
+        return notes.get(index);
+    }
+
+    /**
+     * @param id
+     * @return The position of a note in the grid, or -1 if the grid isn't showing it
+     */
+    public int indexOf(long id) {
+        return notes.indexOf(id);
+    }
+
+    /**
+     * Shows a new set of notes in place of the ones the grid was showing
+     * @param summaries
+     */
+    public void setNotes(List<NoteSummary> summaries) {
+        List<List<NoteSummary>> oldRows = rows.copy(0);
+
+        notes = new SummarySequence();
+        for(NoteSummary summary : summaries) {
+            if(!notes.contains(summary.id))
+                notes.addLast(summary);
+        }
+
+        rows.reset(oldRows);
+    }
+
+    /**
+     * Adds notes after the ones already showing. Notes the grid is already showing are skipped.
+     * Only the last row and the rows after it are touched
+     * @param summaries
+     * @return How many notes were added
+     */
+    public int addNotes(List<NoteSummary> summaries) {
+        int oldSize = notes.size();
+        int oldRowCount = rows.size();
+
+        for(NoteSummary summary : summaries) {
+            if(!notes.contains(summary.id))
+                notes.addLast(summary);
+        }
+
+        if(notes.size() != oldSize)
+            rows.changed(oldSize, oldRowCount, Collections.emptyList());
+
+        return notes.size() - oldSize;
+    }
+
+    /**
+     * Adds notes before the ones already showing, in the order given. A note that is already showing
+     * is moved up with its newer summary
+     * @param summaries
+     */
+    public void addFirst(List<NoteSummary> summaries) {
+        if(summaries.isEmpty())
+            return;
+
+        int oldRowCount = rows.size();
+
+        for(int i = summaries.size() - 1; i >= 0; i--) {
+            notes.remove(summaries.get(i).id);
+            notes.addFirst(summaries.get(i));
+        }
+
+        rows.changed(0, oldRowCount, Collections.emptyList());
+    }
+
+    /**
+     * Takes notes out of the grid. Only the rows from the first removed note onward are touched
+     * @param ids
+     */
+    public void removeNotes(Set<Long> ids) {
+        int first = Integer.MAX_VALUE;
+        int removing = 0;
+
+        for(long id : ids) {
+            int index = notes.indexOf(id);
+
+            if(index >= 0) {
+                first = Math.min(first, index);
+                removing++;
+            }
+        }
+
+        if(removing == 0)
+            return;
+
+        //the rows that fall off the end, as they were before the notes were removed
+        int oldRowCount = rows.size();
+        List<List<NoteSummary>> lostRows = rows.copy(rowCount(notes.size() - removing));
+
+        for(long id : ids)
+            notes.remove(id);
+
+        rows.changed(first, oldRowCount, lostRows);
+    }
+
+    /**
+     * Swaps in a newer summary of a note that is in the grid. Only the note's row is redrawn
+     * @param summary
+     */
+    public void update(NoteSummary summary) {
+        if(notes.replace(summary))
+            rows.updated(notes.indexOf(summary.id) / columns);
+    }
+
+    /**
+     * Works out how many previews fit next to each other
+     * @param width The width of the grid
+     * @return
+     */
+    private static int computeColumns(double width) {
+        return Math.max(1, (int)((width - GAP - SCROLL_BAR_ALLOWANCE) / (PREVIEW_WIDTH + GAP)));
+    }
+
+    /**
+     * @param noteCount
+     * @return How many rows it takes to show that many notes at the current width
+     */
+    private int rowCount(int noteCount) {
+        return (noteCount + columns - 1) / columns;
+    }
+
+    /**
+     * The rows the ListView shows. A row isn't stored anywhere: it is read out of notes when the ListView
+     * asks for it, which it only does for the rows on screen. A change to the notes only reports the rows
+     * from the first note that moved onward, and a cell only redraws when the notes in its row are
+     * different from the ones it is showing.
+     */
+    private class Rows extends ObservableListBase<List<NoteSummary>> {
+
+        @Override
+        public List<NoteSummary> get(int row) {
+            int start = row * columns;
+            int end = Math.min(start + columns, notes.size());
+
+            if(row < 0 || start >= end)
+                throw new IndexOutOfBoundsException("Row: " + row);
+
+            ArrayList<NoteSummary> summaries = new ArrayList<>(end - start);
+            for(int i = start; i < end; i++)
+                summaries.add(notes.get(i));
+
+            return summaries;
+        }
+
+        @Override
+        public int size() {
+            return rowCount(notes.size());
+        }
+
+        /**
+         * @param from
+         * @return The rows from a row to the end, as they are now
+         */
+        List<List<NoteSummary>> copy(int from) {
+            ArrayList<List<NoteSummary>> copy = new ArrayList<>();
+
+            for(int row = from; row < size(); row++)
+                copy.add(get(row));
+
+            return copy;
+        }
+
+        /**
+         * Reports a change to the notes from one position onward
+         * @param firstIndex The position of the first note that changed
+         * @param oldRowCount How many rows there were before the change
+         * @param lostRows The rows that were dropped from the end, if there are fewer rows now
+         */
+        void changed(int firstIndex, int oldRowCount, List<List<NoteSummary>> lostRows) {
+            int rowCount = size();
+
+            beginChange();
+
+            for(int row = firstIndex / columns; row < Math.min(oldRowCount, rowCount); row++)
+                nextUpdate(row);
+
+            if(rowCount > oldRowCount)
+                nextAdd(oldRowCount, rowCount);
+            else if(rowCount < oldRowCount)
+                nextRemove(rowCount, lostRows);
+
+            endChange();
+        }
+
+        /**
+         * Reports that the notes in one row were swapped for newer summaries
+         * @param row
+         */
+        void updated(int row) {
+            beginChange();
+            nextUpdate(row);
+            endChange();
+        }
+
+        /**
+         * Reports that every row was replaced
+         * @param oldRows The rows from before
+         */
+        void reset(List<List<NoteSummary>> oldRows) {
+            beginChange();
+
+            if(!oldRows.isEmpty())
+                nextRemove(0, oldRows);
+
+            if(size() > 0)
+                nextAdd(0, size());
+
+            endChange();
+        }
+    }
+
+    /**
+     * A row of the grid. Its previews are created the first time they are needed, then handed a new note
+     * every time the row is reused.
+     */
+    private class RowCell extends ListCell<List<NoteSummary>> {
+
+        private final HBox box = new HBox(GAP);
+
+        private final ArrayList<NotePreviewController> previews = new ArrayList<>();
+
+        public RowCell() {
+            box.setPadding(new Insets(0, GAP, 0, GAP));
+            setText(null);
+        }
+
+        @Override
+        protected void updateItem(List<NoteSummary> row, boolean empty) {
+            super.updateItem(row, empty);
+
+            if(empty || row == null) {
+                setGraphic(null);
+                return;
+            }
+
+            //make sure there are enough previews for this row
+            while(previews.size() < row.size()) {
+                NotePreviewController preview = new NotePreviewController(row.get(previews.size()), previewListener);
+                previews.add(preview);
+                box.getChildren().add(preview.getRoot());
+            }
+
+            //show this row's notes in the previews, and hide the ones left over at the end of a short row
+            for(int i = 0; i < previews.size(); i++) {
+                NotePreviewController preview = previews.get(i);
+                boolean used = i < row.size();
+
+                if(used)
+                    preview.setSummary(row.get(i));
+
+                preview.getRoot().setVisible(used);
+                preview.getRoot().setManaged(used);
+            }
+
+            setGraphic(box);
+
+            if(onNearEnd != null && getIndex() >= rows.size() - NEAR_END_ROWS)
+                onNearEnd.run();
+        }
+    }
+}
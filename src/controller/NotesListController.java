@@ -1,11 +1,17 @@
 package controller;
 
 import Model.*;
+import Model.jfr.NotesListUpdateEvent;
+import View.ViewFactory;
 import View.ViewLoader;
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -23,13 +29,16 @@ import javafx.stage.Stage;
 import javafx.stage.StageStyle;
 import javafx.stage.WindowEvent;
 import javafx.util.Callback;
+import javafx.util.Duration;
 
 import javax.swing.*;
 import java.io.IOException;
 import java.net.URL;
-import java.sql.SQLException;
 import java.text.DateFormat;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.ResourceBundle;
 
 /**
@@ -42,8 +51,6 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
 
     private Stage stage;
 
-    private ArrayList<Note> notes = new ArrayList<>();
-
     @FXML
     private Button bOpenNote;
 
@@ -53,8 +60,11 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
     @FXML
     private Button bAddNote;
 
+    /**
+     * The virtualized grid that shows a preview of each note
+     */
     @FXML
-    private FlowPane fpNotePreviews;
+    private NotePreviewGrid gridNotePreviews;
 
     /**
      * The text field that determines the what string we will search for
@@ -62,13 +72,42 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
     @FXML
     private TextField tfQuery;
 
-    private ArrayList<Note> selectedNotes = new ArrayList<>();
+    /**
+     * The selected notes by id, in the order they were selected. Kept by id because a note's
+     * summary is replaced whenever the note changes
+     */
+    private LinkedHashMap<Long, NoteSummary> selectedNotes = new LinkedHashMap<>();
 
     /**
      * The object that handles showing of notes
      */
     private NoteControllerHost host;
 
+    /**
+     * How long the search box must sit still before a search is run
+     */
+    private static final Duration QUERY_DELAY = Duration.millis(150);
+
+    /**
+     * Waits out QUERY_DELAY after each keystroke in the search box, so a search only runs once typing pauses
+     */
+    private final PauseTransition queryDelay = new PauseTransition(QUERY_DELAY);
+
+    /**
+     * The results of the latest search, read a page at a time as the grid scrolls. Only touched on the FX thread
+     */
+    private ResultPages results;
+
+    /**
+     * The page of results being read off the FX thread, or null if there is none. Only touched on the FX thread
+     */
+    private Task<List<NoteSummary>> runningQuery;
+
+    /**
+     * How many notes are read from the database at a time
+     */
+    private static final int QUERY_PAGE_SIZE = 100;
+
     /**
      * Loads the FXML file for the notelist controller, initializes the notes table,
      * shows the stage, and adds a textproperty listener ot the search text field
@@ -82,17 +121,22 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
             loader.setController(this);
             Parent root = loader.load();
 
+            gridNotePreviews.setPreviewListener(this);
+            gridNotePreviews.setOnNearEnd(this::loadMore);
+
             //set the stage and scene
             setStage(new Stage());
             getStage().setScene(new Scene(root, 465, 240));
-            getStage().getIcons().add(new Image("Content/icon.png"));
+            getStage().getIcons().add(ViewFactory.getIconImage());
 
             //set my host so that they can listen to when I want to show a note
             setHost(host);
-            setNotes(Database.getInstance().getNotes());
+            query();
 
-            //hook up the event listener for the user searching for notes
-            tfQuery.textProperty().addListener(event -> query());
+            //hook up the event listener for the user searching for notes. Each keystroke restarts
+            //the delay, and the search runs once it finishes
+            queryDelay.setOnFinished(event -> query());
+            tfQuery.textProperty().addListener(event -> queryDelay.playFromStart());
         } //try {}
 
         catch (IOException e) {
@@ -103,146 +147,325 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
     } //NotesListController();
 
     /**
-     * Event handler for when the search box's text is changed. Immediately updates the notes list to
-     * only include those whose title includes the search content
+     * Searches the database for notes matching the search box's text on a background thread, and
+     * shows the first page of results when it arrives. A search that is still running is cancelled first,
+     * and pages from any search other than the latest one are thrown away.
+     *
+     * Later pages are only read once the grid scrolls near its end, so a search never holds more
+     * summaries than have been scrolled past.
+     *
+     * Only summaries are read. A note's full text is loaded when it is opened.
      */
     private void query() {
-        setNotes(Database.getInstance().getNotes(tfQuery.getText()));
+        queryDelay.stop();
+
+        results = new ResultPages(tfQuery.getText());
+        loadPage(true);
     }
 
     /**
-     * Called when an OPEN note's name changes; this updates the table's listing
+     * Reads the next page of the latest search, unless the last one is still being read or there is no more
+     * to read. Called by the grid when its last rows come on screen
      */
-    public void refresh(Note note) {
-        //TODO: Make sure the note previews refresh accurately
+    private void loadMore() {
+        if(runningQuery == null && results != null && results.hasNextPage())
+            loadPage(false);
     }
 
     /**
-     * Called when the notes database has changed. Forces a re-query of the database
+     * Reads the next page of the latest search off the FX thread, then shows it
+     * @param replace True to replace the notes being shown, false to add to them
      */
-    public void reload() {
-        setNotes(Database.getInstance().getNotes());
+    private void loadPage(boolean replace) {
+        if(runningQuery != null)
+            runningQuery.cancel(true);
+
+        final ResultPages pages = results;
+
+        Task<List<NoteSummary>> task = new Task<List<NoteSummary>>() {
+            @Override
+            protected List<NoteSummary> call() throws Exception {
+                return pages.nextPage();
+            }
+        };
+
+        //runs on the FX thread
+        task.setOnSucceeded(event -> {
+            if(task != runningQuery)
+                return;
+
+            runningQuery = null;
+
+            if(replace) {
+                setNotes(task.getValue());
+            } else if(gridNotePreviews.addNotes(task.getValue()) == 0) {
+                //every note in the page was already showing, so nothing new came on screen to ask for more
+                loadMore();
+            }
+        });
+
+        task.setOnFailed(event -> {
+            if(task == runningQuery)
+                runningQuery = null;
+
+            System.out.println("There was an error searching the notes.");
+            task.getException().printStackTrace();
+        });
+
+        runningQuery = task;
+
+        //searches run off the FX thread so the database never stalls the UI
+        AsyncDatabase.getInstance().getReadExecutor().execute(task);
     }
 
     /**
-     * Kills all notes already contained in my list.
-     * Then loops through all the new notes that were passed in, and
-     * checks to see if they are already open. If a note is already open, we add the ALREADY OPEN REFERENCE
-     * from the WINDOW MANAGER to the table instead of the reference from the database.
-     * This prevents the notes list not updating titles properly after a re-query
-     * @param notes
+     * The results of one search, read a page at a time. Listing every note walks a cursor, most recently
+     * saved first. A search is ranked by relevance instead, which isn't a key a page can start after, so
+     * its pages are read by offset.
+     *
+     * Pages are read off the FX thread, one at a time.
      */
-    public void setNotes(ArrayList<Note> notes) {
-        this.notes.clear();
-        this.fpNotePreviews.getChildren().clear();
-
-        //loop through all the notes given to us so we can filter the ones from the database out
-        //that we already have open. Existing instance takes priority over database instance.
-        for(Note note : notes) {
-
-            //if the note is already open, we want to add the open instance
-            //not the instance from the database (or other source) to make sure the
-            //title list on the table stays properly updated
-            if(getHost().getOpenNotes().contains(note)) {
-                this.notes.add(getHost().getOpenNotes().get(getHost().getOpenNotes().indexOf(note)));
-            }
-            //if the note was not already open or already in the previews list, we add it from the database
-            else {
-                this.notes.add(note);
-            }
-        }
+    private static class ResultPages {
+
+        private final String query;
 
-        //add in all the notes that were passed in that do not already
-        //have previews open
-        //clear all the note previews
-        fpNotePreviews.getChildren().clear();
+        /**
+         * The cursor when listing every note, or null for a search
+         */
+        private NoteCursor<NoteSummary> cursor;
+
+        /**
+         * How many results of a search have been read, and whether that was all of them
+         */
+        private int offset = 0;
+        private boolean exhausted = false;
 
-        //and add in only the notes we need to show (ie: the ones passed in)
-        for(int i = 0; i < this.notes.size(); i++) {
-            NotePreviewController controller1 = new NotePreviewController(this.notes.get(i), this);
-            fpNotePreviews.getChildren().add(controller1.getRoot());
+        ResultPages(String query) {
+            this.query = query;
         }
 
-        selectedNotes.clear();
+        List<NoteSummary> nextPage() {
+            if(query.trim().isEmpty()) {
+                if(cursor == null)
+                    cursor = Database.getInstance().openSummaryCursor("", QUERY_PAGE_SIZE);
+
+                return cursor.nextPage();
+            }
 
-        if(this.notes.size() == 0)
-            fpNotePreviews.getChildren().addAll(configureEmptyStackPane());
+            List<NoteSummary> page = Database.getInstance().getNoteSummaries(query, offset, QUERY_PAGE_SIZE);
+            offset += page.size();
+            exhausted = page.size() < QUERY_PAGE_SIZE;
 
-        System.out.println("Selected notes: " + selectedNotes.size());
+            return page;
+        }
+
+        boolean hasNextPage() {
+            return cursor != null ? cursor.hasNextPage() : !exhausted;
+        }
     }
 
     /**
-     * Used to populate the FlowPane when there are no notes in the field.
-     * This adds a simple label to the pane that displays "No notes to show"
+     * Called when an OPEN note's name changes; this updates the table's listing.
+     * The preview is redrawn where it is. The note moves to the top once its save is applied by applyChange()
      */
-    private StackPane configureEmptyStackPane() {
-        StackPane pane = new StackPane();
+    public void refresh(Note note) {
+        //the note is already loaded, so its summary is made from it rather than read back
+        gridNotePreviews.update(NoteSummary.of(note));
+    }
 
-        Label label = new Label("Nothing to show. Create a new note?");
-        pane.getChildren().add(label);
+    /**
+     * Called when the notes database has changed. Forces a re-query of the database
+     */
+    public void reload() {
+        query();
+    }
 
-        return pane;
+    /**
+     * Applies a committed database change to the notes being shown, without re-querying the database.
+     * Only the notes that changed are touched, and only the previews on screen are redrawn.
+     * @param change
+     */
+    public void applyChange(DatabaseChange change) {
+        switch(change.type) {
+            case INSERTED:
+                //new notes are the most recently saved ones, so they go at the top of the grid
+                ArrayList<NoteSummary> inserted = new ArrayList<>();
+
+                for(Note note : change.notes) {
+                    if(matchesQuery(note))
+                        inserted.add(NoteSummary.of(note));
+                }
+
+                gridNotePreviews.addFirst(inserted);
+                break;
+
+            case DELETED:
+                HashSet<Long> deleted = new HashSet<>();
+                for(long id : change.ids)
+                    deleted.add(id);
+
+                gridNotePreviews.removeNotes(deleted);
+
+                if(selectedNotes.keySet().removeAll(deleted) && selectedNotes.isEmpty())
+                    clearSelection();
+                break;
+
+            case UPDATED:
+            case RESTORED:
+                ArrayList<NoteSummary> moved = new ArrayList<>();
+                HashSet<Long> unmatched = new HashSet<>();
+
+                for(Note note : change.notes) {
+                    NoteSummary summary = NoteSummary.of(note);
+                    int index = gridNotePreviews.indexOf(note.id);
+
+                    //only INSERTED changes bring in notes the grid isn't showing. A note that isn't shown was either
+                    //never in these results or was deleted since, and putting it back would show a ghost
+                    if(index < 0)
+                        continue;
+
+                    if(!matchesQuery(note)) {
+                        unmatched.add(note.id);
+                    } else if(isListingAll() && summary.dateSaved > gridNotePreviews.getNote(index).dateSaved) {
+                        //every note is listed most recently saved first, so a note that was just edited
+                        //goes to the top. Search results are ranked instead, so they stay put
+                        moved.add(summary);
+                    } else {
+                        gridNotePreviews.update(summary);
+                    }
+                }
+
+                moved.sort((a, b) -> Long.compare(b.dateSaved, a.dateSaved));
+                gridNotePreviews.addFirst(moved);
+
+                if(!unmatched.isEmpty()) {
+                    gridNotePreviews.removeNotes(unmatched);
+
+                    if(selectedNotes.keySet().removeAll(unmatched) && selectedNotes.isEmpty())
+                        clearSelection();
+                }
+                break;
+        }
     }
 
     /**
-     * Instantiates a new note from the database, and instructs the host
-     * window manager to show it
+     * @return Whether the grid is listing every note, most recently saved first, rather than showing a search
      */
-    @FXML
-    public void addNote() {
-        try {
-            //get a new note from the database
-            Note note = Database.getInstance().newNote();
+    private boolean isListingAll() {
+        return results == null || results.query.trim().isEmpty();
+    }
 
-            //track this note and add it to the table
-            notes.add(note);
+    /**
+     * Checks a note against the search being shown the same way a search of the database would
+     * @param note
+     * @return
+     */
+    private boolean matchesQuery(Note note) {
+        return results == null || Database.getInstance().matchesSearch(note.getTitle(), note.getText(), results.query);
+    }
 
-            if(note.getTitle().contains(tfQuery.getText())) {
-                NotePreviewController previewController = new NotePreviewController(note, this);
-                fpNotePreviews.getChildren().add(previewController.getRoot());
-            }
+    /**
+     * Kills all notes already contained in my list, then shows the notes that were passed in.
+     * @param notes
+     */
+    public void setNotes(List<NoteSummary> notes) {
+        NotesListUpdateEvent event = new NotesListUpdateEvent();
+        event.begin();
 
-            //have the host window manager
-            getHost().showNote(note);
+        clearSelection();
 
-        } catch (SQLException e) {
-            System.out.println("There was an error adding a new note");
-            System.out.println(e.getMessage());
-            e.printStackTrace();
+        gridNotePreviews.setNotes(notes);
+
+        event.end();
+        if(event.shouldCommit()) {
+            event.rows = notes.size();
+            event.commit();
         }
     }
 
     /**
-     * Instructs my host to show the currently selected note from the table
+     * Instantiates a new note from the database, and instructs the host
+     * window manager to show it once it is created
+     */
+    @FXML
+    public void addNote() {
+        //the grid picks the note up from the database's change event
+        AsyncDatabase.getInstance().newNote()
+                .thenAcceptAsync(note -> getHost().showNote(note), AsyncDatabase.FX_THREAD)
+                .exceptionally(ex -> {
+                    System.out.println("There was an error adding a new note");
+                    ex.printStackTrace();
+                    return null;
+                });
+    }
+
+    /**
+     * Loads the whole note a preview summarizes and instructs my host to show it
      */
     @FXML
-    public void showNote(Note note) {
-        getHost().showNote(note);
+    public void showNote(NoteSummary summary) {
+        AsyncDatabase.getInstance().getNote(summary.id).thenAcceptAsync(note -> {
+            if(note != null)
+                getHost().showNote(note);
+        }, AsyncDatabase.FX_THREAD);
     }
 
     @FXML
     private void showSelectedNotes() {
-        for(Note note : selectedNotes) {
-            getHost().showNote(note);
-        }
+        AsyncDatabase.getInstance().getNotes(getSelectedIds()).thenAcceptAsync(notes -> {
+            for(Note note : notes)
+                getHost().showNote(note);
+        }, AsyncDatabase.FX_THREAD);
+    }
+
+    /**
+     * @return The ids of the selected notes, in the order they were selected
+     */
+    private long[] getSelectedIds() {
+        long[] ids = new long[selectedNotes.size()];
+        int i = 0;
+
+        for(long id : selectedNotes.keySet())
+            ids[i++] = id;
+
+        return ids;
+    }
+
+    /**
+     * Tells a preview whether its note is selected
+     * @param summary
+     * @return
+     */
+    @Override
+    public boolean isNoteSelected(NoteSummary summary) {
+        return selectedNotes.containsKey(summary.id);
+    }
+
+    /**
+     * Deselects every note and disables the buttons that act on the selection
+     */
+    private void clearSelection() {
+        selectedNotes.clear();
+        bDeleteNote.setDisable(true);
+        bOpenNote.setDisable(true);
     }
 
     /**
      * Called when a Note notifies me of selection or deselection. I DO NOT MANAGE THE NOTE'S INTERNAL
      * FLAG. Only an external list
      * Adds or removes a note from the selected notes list
-     * @param note
+     * @param summary
      * @param selected
      */
     @Override
-    public void setNoteSelected(Note note, boolean selected) {
-        if(selected && !selectedNotes.contains(note)) {
-            selectedNotes.add(note);
+    public void setNoteSelected(NoteSummary summary, boolean selected) {
+        if(selected && !selectedNotes.containsKey(summary.id)) {
+            selectedNotes.put(summary.id, summary);
             bDeleteNote.setDisable(false);
             bOpenNote.setDisable(false);
         }
         else {
-            selectedNotes.remove(note);
+            selectedNotes.remove(summary.id);
 
             if(selectedNotes.size() == 0) {
                 bDeleteNote.setDisable(true);
@@ -258,9 +481,9 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
     @FXML
     public void deleteSelectedNotes() {
          //Let my host know to delete everything I've got selected
-        getHost().deleteAllNotes(selectedNotes);
+        getHost().deleteAllNotes(getSelectedIds());
 
-        selectedNotes.clear();
+        clearSelection();
     }
 
     /**
@@ -288,7 +511,7 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
             }
             //if we're NOT empty
             else {
-                setText(notes.get(getIndex()).getTitle());
+                setText(gridNotePreviews.getNote(getIndex()).getTitle());
             }
         }
     }
@@ -322,7 +545,7 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
             } else {
                 DateFormat date = DateFormat.getDateInstance(DateFormat.DATE_FIELD);
                 DateFormat time = DateFormat.getTimeInstance();
-                setText(date.format(notes.get(getIndex()).getDateSaved()) + " at " +  time.format(notes.get(getIndex()).getDateSaved()));
+                setText(date.format(gridNotePreviews.getNote(getIndex()).getDateSaved()) + " at " +  time.format(gridNotePreviews.getNote(getIndex()).getDateSaved()));
                 setGraphic(null);
             }
         }
@@ -334,7 +557,7 @@ public class NotesListController implements NotePreviewController.NotePreviewLis
      * @param index The index of the table that was clicked
      */
     private void showNoteAtIndex(int index) {
-            getHost().showNote(notes.get(index));
+            showNote(gridNotePreviews.getNote(index));
     }
 
     public void setStage(Stage stage) {
@@ -0,0 +1,219 @@
+package controller;
+
+import Model.NoteSummary;
+
+import java.util.HashMap;
+
+/**
+ * The notes shown by a NotePreviewGrid, in order, held so that adding a note at either end, removing one,
+ * finding where a note is and reading the note at a position all take O(log n) instead of shifting or
+ * renumbering every note after the one that changed.
+ *
+ * Notes live in slots of an array that has free room at both ends. A removed note just empties its slot,
+ * and a Fenwick tree counts the filled slots, which turns a position into a slot and back. The array is
+ * only rebuilt when one end runs out of room or most of its slots are empty, so that cost is spread
+ * over the changes that led up to it.
+ */
+final class SummarySequence {
+
+    /**
+     * The smallest number of slots the array is rebuilt with
+     */
+    private static final int MIN_CAPACITY = 64;
+
+    /**
+     * The notes, with null for an empty slot. Only slots in [head, tail) are ever filled
+     */
+    private NoteSummary[] slots = new NoteSummary[MIN_CAPACITY];
+
+    /**
+     * Fenwick tree over slots, 1-based: how many of them are filled
+     */
+    private int[] filled = new int[MIN_CAPACITY + 1];
+
+    /**
+     * Which slot each note is in, by id
+     */
+    private final HashMap<Long, Integer> slotOf = new HashMap<>();
+
+    /**
+     * The first slot that may be filled, and the slot right after the last one that may be filled
+     */
+    private int head = MIN_CAPACITY / 2;
+    private int tail = MIN_CAPACITY / 2;
+
+    /**
+     * @return How many notes there are
+     */
+    int size() {
+        return slotOf.size();
+    }
+
+    boolean isEmpty() {
+        return slotOf.isEmpty();
+    }
+
+    boolean contains(long id) {
+        return slotOf.containsKey(id);
+    }
+
+    /**
+     * @param index
+     * @return The note at a position
+     */
+    NoteSummary get(int index) {
+        if(index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index);
+
+        return slots[slotAtRank(index + 1)];
+    }
+
+    /**
+     * @param id
+     * @return The position of the note with this id, or -1 if it isn't here
+     */
+    int indexOf(long id) {
+        Integer slot = slotOf.get(id);
+        return slot == null ? -1 : filledUpTo(slot + 1) - 1;
+    }
+
+    /**
+     * Puts a note before every other note
+     * @param summary A note that isn't here yet
+     */
+    void addFirst(NoteSummary summary) {
+        if(head == 0)
+            rebuild();
+
+        fill(--head, summary);
+    }
+
+    /**
+     * Puts a note after every other note
+     * @param summary A note that isn't here yet
+     */
+    void addLast(NoteSummary summary) {
+        if(tail == slots.length)
+            rebuild();
+
+        fill(tail++, summary);
+    }
+
+    /**
+     * Swaps in a newer summary of a note, in the same position
+     * @param summary
+     * @return Whether the note was here
+     */
+    boolean replace(NoteSummary summary) {
+        Integer slot = slotOf.get(summary.id);
+
+        if(slot == null)
+            return false;
+
+        slots[slot] = summary;
+        return true;
+    }
+
+    /**
+     * @param id
+     * @return The note that was removed, or null if it wasn't here
+     */
+    NoteSummary remove(long id) {
+        Integer slot = slotOf.remove(id);
+
+        if(slot == null)
+            return null;
+
+        NoteSummary removed = slots[slot];
+        slots[slot] = null;
+        add(slot, -1);
+
+        //don't let empty slots pile up between the notes
+        if(tail - head - size() > Math.max(size(), MIN_CAPACITY))
+            rebuild();
+
+        return removed;
+    }
+
+    /**
+     * Moves the notes into a fresh array, with as much free room on each side of them as there are notes
+     */
+    private void rebuild() {
+        int size = size();
+        NoteSummary[] newSlots = new NoteSummary[Math.max(MIN_CAPACITY, size * 3)];
+        int newHead = (newSlots.length - size) / 2;
+        int next = newHead;
+
+        for(int slot = head; slot < tail; slot++) {
+            NoteSummary summary = slots[slot];
+
+            if(summary != null) {
+                newSlots[next] = summary;
+                slotOf.put(summary.id, next++);
+            }
+        }
+
+        slots = newSlots;
+        head = newHead;
+        tail = next;
+
+        //build the tree in linear time: each node passes its count up to its parent
+        filled = new int[newSlots.length + 1];
+        for(int i = 1; i <= newSlots.length; i++) {
+            if(newSlots[i - 1] != null)
+                filled[i]++;
+
+            int parent = i + (i & -i);
+            if(parent <= newSlots.length)
+                filled[parent] += filled[i];
+        }
+    }
+
+    private void fill(int slot, NoteSummary summary) {
+        slots[slot] = summary;
+        slotOf.put(summary.id, slot);
+        add(slot, 1);
+    }
+
+    /**
+     * Changes the count of one slot in the tree
+     */
+    private void add(int slot, int delta) {
+        for(int i = slot + 1; i < filled.length; i += i & -i)
+            filled[i] += delta;
+    }
+
+    /**
+     * @param slots How many slots to count, from the start of the array
+     * @return How many of them are filled
+     */
+    private int filledUpTo(int slots) {
+        int count = 0;
+
+        for(int i = slots; i > 0; i -= i & -i)
+            count += filled[i];
+
+        return count;
+    }
+
+    /**
+     * @param rank 1 for the first note, 2 for the second...
+     * @return The slot the note is in
+     */
+    private int slotAtRank(int rank) {
+        int position = 0;
+
+        //walk down the tree, skipping every block of slots that ends before the note
+        for(int step = Integer.highestOneBit(filled.length - 1); step > 0; step >>= 1) {
+            int next = position + step;
+
+            if(next < filled.length && filled[next] < rank) {
+                position = next;
+                rank -= filled[next];
+            }
+        }
+
+        //position is the number of slots before the note's slot
+        return position;
+    }
+}